@@ -0,0 +1,525 @@
+package org.json.processor;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+/**
+ * Writes the source of the codec of a {@link JSONCodecProcessor.BeanModel}.
+ * The codec of <code>p.Outer.Inner</code> is the class
+ * <code>p.Outer_Inner_JSONCodec</code>. All the types of the bean are written
+ * with their canonical names, so the codec compiles whatever the bean
+ * imports.
+ */
+final class CodecSource {
+    /**
+     * The default implementations of the Collection interfaces, in the order
+     * they are tried, as chosen by <code>JSONObject.toBean(Class)</code>.
+     */
+    private static final String[] COLLECTIONS = {
+            "java.util.ArrayList", "java.util.LinkedHashSet", "java.util.TreeSet", "java.util.ArrayDeque"};
+
+    /**
+     * The default implementations of the Map interfaces, in the order they are
+     * tried.
+     */
+    private static final String[] MAPS = {
+            "java.util.LinkedHashMap", "java.util.TreeMap", "java.util.concurrent.ConcurrentHashMap"};
+
+    private final ProcessingEnvironment env;
+    private final Elements elements;
+    private final Types types;
+    private final JSONCodecProcessor.BeanModel model;
+    private final String beanName;
+
+    /**
+     * The names of the helpers binding Collections, Maps and arrays, by the
+     * type they bind.
+     */
+    private final Map<String, String> helperNames = new HashMap<>();
+    private final StringBuilder helpers = new StringBuilder();
+
+    CodecSource(ProcessingEnvironment env, JSONCodecProcessor.BeanModel model) {
+        this.env = env;
+        this.elements = env.getElementUtils();
+        this.types = env.getTypeUtils();
+        this.model = model;
+        this.beanName = model.type.getQualifiedName().toString();
+    }
+
+    /**
+     * Writes the source file of the codec.
+     *
+     * @return the binary name of the codec
+     */
+    String write() throws IOException, JSONCodecProcessor.ProcessingException {
+        TypeElement type = this.model.type;
+        String packageName = this.elements.getPackageOf(type).getQualifiedName().toString();
+        String simpleName = this.beanName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+                .replace('.', '_') + "_JSONCodec";
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + '.' + simpleName;
+
+        StringBuilder body = new StringBuilder();
+        writeToJSONObject(body);
+        writeWrite(body);
+        writeFromJSONObject(body);
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import java.io.IOException;\n")
+                .append("import java.io.Writer;\n")
+                .append("import javax.annotation.processing.Generated;\n")
+                .append("import org.json.JSONArray;\n")
+                .append("import org.json.JSONCodec;\n")
+                .append("import org.json.JSONException;\n")
+                .append("import org.json.JSONObject;\n\n")
+                .append("/**\n * The {@link JSONCodec} of {@link ").append(this.beanName).append("}.\n */\n")
+                .append("@Generated(\"").append(JSONCodecProcessor.class.getName()).append("\")\n")
+                .append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public final class ").append(simpleName)
+                .append(" implements JSONCodec<").append(this.beanName).append("> {\n");
+        List<JSONCodecProcessor.Getter> getters = this.model.getters;
+        for (int i = 0; i < getters.size(); i += 1) {
+            source.append("    private static final String KEY_").append(i).append(" = JSONObject.quote(")
+                    .append(literal(getters.get(i).key)).append(") + ':';\n");
+        }
+        source.append("\n    @Override\n")
+                .append("    public Class<").append(this.beanName).append("> type() {\n")
+                .append("        return ").append(this.beanName).append(".class;\n")
+                .append("    }\n")
+                .append(body)
+                .append("\n    private static JSONException bindError(String key, RuntimeException e) {\n")
+                .append("        return new JSONException(\"Unable to bind JSONObject value for key: \" + key, e);\n")
+                .append("    }\n")
+                .append("\n    private static JSONException bindError(int index, RuntimeException e) {\n")
+                .append("        return new JSONException(\"Unable to bind JSONArray value at index: \" + index, e);\n")
+                .append("    }\n")
+                .append(this.helpers)
+                .append("}\n");
+
+        JavaFileObject file = this.env.getFiler().createSourceFile(qualifiedName, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source.toString());
+        }
+        return qualifiedName;
+    }
+
+    private void writeToJSONObject(StringBuilder out) {
+        out.append("\n    @Override\n")
+                .append("    public JSONObject toJSONObject(").append(this.beanName).append(" value) {\n")
+                .append("        return toJSONObject(value, JSONCodec.Context.of(value));\n")
+                .append("    }\n")
+                .append("\n    @Override\n")
+                .append("    public JSONObject toJSONObject(").append(this.beanName)
+                .append(" value, JSONCodec.Context context) {\n")
+                .append("        JSONObject jo = new JSONObject();\n");
+        List<JSONCodecProcessor.Getter> getters = this.model.getters;
+        for (int i = 0; i < getters.size(); i += 1) {
+            JSONCodecProcessor.Getter getter = getters.get(i);
+            String v = "v" + i;
+            out.append("        Object ").append(v).append(";\n");
+            writeGetterCall(out, getter, v, v + " = null;");
+            out.append("        context.put(jo, ").append(literal(getter.key)).append(", ").append(v)
+                    .append(");\n");
+        }
+        out.append("        return jo;\n")
+                .append("    }\n");
+    }
+
+    private void writeWrite(StringBuilder out) {
+        out.append("\n    @Override\n")
+                .append("    public void write(").append(this.beanName)
+                .append(" value, Writer writer) throws IOException {\n")
+                .append("        write(value, writer, JSONCodec.Context.of(value));\n")
+                .append("    }\n")
+                .append("\n    @Override\n")
+                .append("    public void write(").append(this.beanName)
+                .append(" value, Writer writer, JSONCodec.Context context) throws IOException {\n")
+                .append("        boolean needsComma = false;\n")
+                .append("        writer.write('{');\n");
+        List<JSONCodecProcessor.Getter> getters = this.model.getters;
+        for (int i = 0; i < getters.size(); i += 1) {
+            JSONCodecProcessor.Getter getter = getters.get(i);
+            TypeMirror type = getter.type;
+            String v = "v" + i;
+            String indent = "            ";
+            if (type.getKind().isPrimitive()) {
+                // a primitive can't be null, so a flag tells if the getter returned
+                String has = "has" + i;
+                out.append("        ").append(typeName(type)).append(' ').append(v).append(" = ")
+                        .append(defaultValue(type)).append(";\n")
+                        .append("        boolean ").append(has).append(" = true;\n");
+                writeGetterCall(out, getter, v, has + " = false;");
+                out.append("        if (").append(has).append(") {\n");
+            } else {
+                out.append("        ").append(typeName(type)).append(' ').append(v).append(";\n");
+                writeGetterCall(out, getter, v, v + " = null;");
+                out.append("        if (").append(v).append(" != null) {\n");
+            }
+            out.append(indent).append("if (needsComma) {\n")
+                    .append(indent).append("    writer.write(',');\n")
+                    .append(indent).append("}\n")
+                    .append(indent).append("writer.write(KEY_").append(i).append(");\n")
+                    .append(indent).append(writeStatement(type, literal(getter.key), v)).append('\n')
+                    .append(indent).append("needsComma = true;\n")
+                    .append("        }\n");
+        }
+        out.append("        writer.write('}');\n")
+                .append("    }\n");
+    }
+
+    /**
+     * Writes the call of a getter storing its result in a variable. Like
+     * <code>new JSONObject(bean)</code>, the property is left out if the
+     * getter throws an exception, which the statement run then marks.
+     */
+    private static void writeGetterCall(StringBuilder out, JSONCodecProcessor.Getter getter, String v,
+                                        String onException) {
+        out.append("        try {\n")
+                .append("            ").append(v).append(" = value.").append(getter.method).append("();\n")
+                .append("        } catch (Exception e) {\n")
+                .append("            ").append(onException).append('\n')
+                .append("        }\n");
+    }
+
+    private static String writeStatement(TypeMirror type, String key, String v) {
+        switch (type.getKind()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+                return "writer.write(Integer.toString(" + v + "));";
+            case LONG:
+                return "writer.write(Long.toString(" + v + "));";
+            case BOOLEAN:
+                return "writer.write(" + v + " ? \"true\" : \"false\");";
+            case CHAR:
+                return "JSONObject.quote(String.valueOf(" + v + "), writer);";
+            case DECLARED:
+                if (isString(type)) {
+                    return "JSONObject.quote(" + v + ", writer);";
+                }
+                return "context.write(" + key + ", " + v + ", writer);";
+            default:
+                // float and double are checked for non-finite values
+                return "context.write(" + key + ", " + v + ", writer);";
+        }
+    }
+
+    private void writeFromJSONObject(StringBuilder out) throws JSONCodecProcessor.ProcessingException {
+        out.append("\n    @Override\n")
+                .append("    public ").append(this.beanName).append(" fromJSONObject(JSONObject jo) {\n");
+        List<JSONCodecProcessor.Slot> parameters = this.model.parameters;
+        StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < parameters.size(); i += 1) {
+            JSONCodecProcessor.Slot parameter = parameters.get(i);
+            String a = "a" + i;
+            if (i > 0) {
+                arguments.append(", ");
+            }
+            arguments.append(a);
+            out.append("        ").append(typeName(parameter.type)).append(' ').append(a);
+            if (parameter.key == null) {
+                // an ignored record component
+                out.append(" = ").append(defaultValue(parameter.type)).append(";\n");
+                continue;
+            }
+            String v = "p" + i;
+            out.append(";\n")
+                    .append("        Object ").append(v).append(" = jo.opt(").append(literal(parameter.key))
+                    .append(");\n")
+                    .append("        try {\n")
+                    .append("            ").append(a).append(" = ");
+            if (parameter.type.getKind().isPrimitive()) {
+                out.append("JSONObject.NULL.equals(").append(v).append(") ? ")
+                        .append(defaultValue(parameter.type)).append(" : ");
+            }
+            out.append(conversion(parameter.type, v)).append(";\n")
+                    .append("        } catch (RuntimeException e) {\n")
+                    .append("            throw bindError(").append(literal(parameter.key)).append(", e);\n")
+                    .append("        }\n");
+        }
+        out.append("        ").append(this.beanName).append(" bean = new ").append(this.beanName)
+                .append('(').append(arguments).append(");\n");
+        List<JSONCodecProcessor.Slot> setters = this.model.setters;
+        for (int i = 0; i < setters.size(); i += 1) {
+            JSONCodecProcessor.Slot setter = setters.get(i);
+            String v = "s" + i;
+            out.append("        Object ").append(v).append(" = jo.opt(").append(literal(setter.key)).append(");\n")
+                    .append("        if (").append(v).append(" != null && !JSONObject.NULL.equals(").append(v)
+                    .append(")) {\n")
+                    .append("            try {\n")
+                    .append("                bean.").append(setter.setter).append('(')
+                    .append(conversion(setter.type, v)).append(");\n")
+                    .append("            } catch (RuntimeException e) {\n")
+                    .append("                throw bindError(").append(literal(setter.key)).append(", e);\n")
+                    .append("            }\n")
+                    .append("        }\n");
+        }
+        out.append("        return bean;\n")
+                .append("    }\n");
+    }
+
+    /**
+     * Makes the expression binding the value held by a variable to a type.
+     */
+    private String conversion(TypeMirror type, String v) throws JSONCodecProcessor.ProcessingException {
+        if (type.getKind().isPrimitive()) {
+            return "JSONCodec.bind(" + v + ", " + typeName(type) + ".class)";
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            return helper(type) + '(' + v + ')';
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            DeclaredType declared = (DeclaredType) type;
+            List<? extends TypeMirror> arguments = declared.getTypeArguments();
+            if (arguments.size() == 1 && isSubtype(type, "java.util.Collection")
+                    || arguments.size() == 2 && isSubtype(type, "java.util.Map")) {
+                return helper(type) + '(' + v + ')';
+            }
+            String erasure = typeName(this.types.erasure(type));
+            if (arguments.isEmpty()) {
+                return "JSONCodec.bind(" + v + ", " + erasure + ".class)";
+            }
+            return "(" + typeName(type) + ") JSONCodec.bind(" + v + ", " + erasure + ".class)";
+        }
+        // type variables of generic methods and the like
+        String erasure = typeName(this.types.erasure(type));
+        return "(" + erasure + ") JSONCodec.bind(" + v + ", " + erasure + ".class)";
+    }
+
+    /**
+     * Gets the name of the helper binding a Collection, Map or array type,
+     * writing the helper the first time.
+     */
+    private String helper(TypeMirror type) throws JSONCodecProcessor.ProcessingException {
+        String typeName = typeName(type);
+        String name = this.helperNames.get(typeName);
+        if (name != null) {
+            return name;
+        }
+        name = "bind" + this.helperNames.size();
+        this.helperNames.put(typeName, name);
+        StringBuilder out = new StringBuilder();
+        out.append("\n    private static ").append(typeName).append(' ').append(name).append("(Object value) {\n");
+        if (type.getKind() == TypeKind.ARRAY) {
+            TypeMirror component = ((ArrayType) type).getComponentType();
+            out.append("        JSONArray array = JSONCodec.bind(value, JSONArray.class);\n")
+                    .append("        if (array == null) {\n")
+                    .append("            return null;\n")
+                    .append("        }\n")
+                    .append("        ").append(typeName).append(" result = ");
+            if (!isReifiable(component)) {
+                out.append('(').append(typeName).append(") ");
+            }
+            out.append(newArray(component, "array.length()")).append(";\n")
+                    .append("        for (int i = 0; i < result.length; i += 1) {\n")
+                    .append("            Object element = array.opt(i);\n");
+            if (component.getKind().isPrimitive()) {
+                out.append("            if (JSONObject.NULL.equals(element)) {\n")
+                        .append("                throw new JSONException(\"Unable to bind JSONArray value at index: \"")
+                        .append(" + i + \" (null is not a ").append(component).append(")\");\n")
+                        .append("            }\n");
+            }
+            out.append("            try {\n")
+                    .append("                result[i] = ").append(conversion(component, "element")).append(";\n")
+                    .append("            } catch (RuntimeException e) {\n")
+                    .append("                throw bindError(i, e);\n")
+                    .append("            }\n")
+                    .append("        }\n");
+        } else if (isSubtype(type, "java.util.Collection")) {
+            TypeMirror element = ((DeclaredType) type).getTypeArguments().get(0);
+            String implementation = implementation(type, COLLECTIONS);
+            out.append("        JSONArray array = JSONCodec.bind(value, JSONArray.class);\n")
+                    .append("        if (array == null) {\n")
+                    .append("            return null;\n")
+                    .append("        }\n")
+                    .append("        ").append(typeName).append(" result = new ").append(implementation)
+                    .append("<>(").append("java.util.ArrayList".equals(implementation) ? "array.length()" : "")
+                    .append(");\n")
+                    .append("        for (int i = 0, length = array.length(); i < length; i += 1) {\n")
+                    .append("            try {\n")
+                    .append("                result.add(").append(conversion(wildcardBound(element), "array.opt(i)"))
+                    .append(");\n")
+                    .append("            } catch (RuntimeException e) {\n")
+                    .append("                throw bindError(i, e);\n")
+                    .append("            }\n")
+                    .append("        }\n");
+        } else {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            out.append("        JSONObject object = JSONCodec.bind(value, JSONObject.class);\n")
+                    .append("        if (object == null) {\n")
+                    .append("            return null;\n")
+                    .append("        }\n")
+                    .append("        ").append(typeName).append(" result = new ")
+                    .append(implementation(type, MAPS)).append("<>();\n")
+                    .append("        for (String key : object.keySet()) {\n")
+                    .append("            try {\n")
+                    .append("                result.put(").append(conversion(wildcardBound(arguments.get(0)), "key"))
+                    .append(", ").append(conversion(wildcardBound(arguments.get(1)), "object.opt(key)"))
+                    .append(");\n")
+                    .append("            } catch (RuntimeException e) {\n")
+                    .append("                throw bindError(key, e);\n")
+                    .append("            }\n")
+                    .append("        }\n");
+        }
+        out.append("        return result;\n")
+                .append("    }\n");
+        this.helpers.append(out);
+        return name;
+    }
+
+    /**
+     * Chooses the class instantiated for a Collection or Map type: the type
+     * itself if it is a concrete class, or else the first default
+     * implementation assignable to it.
+     */
+    private String implementation(TypeMirror type, String[] defaults)
+            throws JSONCodecProcessor.ProcessingException {
+        TypeElement element = (TypeElement) this.types.asElement(type);
+        if (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+            return element.getQualifiedName().toString();
+        }
+        TypeMirror erasure = this.types.erasure(type);
+        for (String candidate : defaults) {
+            TypeElement implementation = this.elements.getTypeElement(candidate);
+            if (implementation != null
+                    && this.types.isAssignable(this.types.erasure(implementation.asType()), erasure)) {
+                return candidate;
+            }
+        }
+        throw new JSONCodecProcessor.ProcessingException(
+                "No implementation of " + type + " to bind to.", this.model.type);
+    }
+
+    private TypeMirror wildcardBound(TypeMirror type) {
+        if (type.getKind() == TypeKind.WILDCARD) {
+            TypeMirror bound = ((WildcardType) type).getExtendsBound();
+            return bound != null ? bound : this.elements.getTypeElement("java.lang.Object").asType();
+        }
+        return type;
+    }
+
+    private boolean isSubtype(TypeMirror type, String name) {
+        TypeElement element = this.elements.getTypeElement(name);
+        return element != null
+                && this.types.isAssignable(this.types.erasure(type), this.types.erasure(element.asType()));
+    }
+
+    private static boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) type).asElement())
+                .getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    private static boolean isReifiable(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isReifiable(((ArrayType) type).getComponentType());
+        }
+        return type.getKind().isPrimitive()
+                || type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    /**
+     * Makes the expression creating an array of a component type, such as
+     * <code>new int[n][]</code> for the component type <code>int[]</code>.
+     */
+    private String newArray(TypeMirror component, String length) {
+        String erasure = typeName(this.types.erasure(component));
+        int dims = erasure.indexOf('[');
+        if (dims < 0) {
+            return "new " + erasure + '[' + length + ']';
+        }
+        return "new " + erasure.substring(0, dims) + '[' + length + ']' + erasure.substring(dims);
+    }
+
+    /**
+     * Gets the name of a type in source, without the annotations javac may
+     * print with it.
+     */
+    private String typeName(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return typeName(((ArrayType) type).getComponentType()) + "[]";
+            case DECLARED: {
+                DeclaredType declared = (DeclaredType) type;
+                StringBuilder name = new StringBuilder(
+                        ((TypeElement) declared.asElement()).getQualifiedName());
+                List<? extends TypeMirror> arguments = declared.getTypeArguments();
+                if (!arguments.isEmpty()) {
+                    name.append('<');
+                    for (int i = 0; i < arguments.size(); i += 1) {
+                        if (i > 0) {
+                            name.append(", ");
+                        }
+                        name.append(typeName(arguments.get(i)));
+                    }
+                    name.append('>');
+                }
+                return name.toString();
+            }
+            case WILDCARD: {
+                WildcardType wildcard = (WildcardType) type;
+                if (wildcard.getExtendsBound() != null) {
+                    return "? extends " + typeName(wildcard.getExtendsBound());
+                }
+                if (wildcard.getSuperBound() != null) {
+                    return "? super " + typeName(wildcard.getSuperBound());
+                }
+                return "?";
+            }
+            case TYPEVAR:
+                return typeName(this.types.erasure(type));
+            default:
+                return type.getKind().isPrimitive() ? type.getKind().name().toLowerCase(Locale.ROOT)
+                        : type.toString();
+        }
+    }
+
+    private static String defaultValue(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case CHAR:
+                return "(char) 0";
+            case BYTE:
+                return "(byte) 0";
+            case SHORT:
+                return "(short) 0";
+            case INT:
+                return "0";
+            case LONG:
+                return "0L";
+            case FLOAT:
+                return "0.0f";
+            case DOUBLE:
+                return "0.0d";
+            default:
+                return "null";
+        }
+    }
+
+    private String literal(String value) {
+        return this.elements.getConstantExpression(value);
+    }
+}
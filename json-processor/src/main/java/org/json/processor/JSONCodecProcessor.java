@@ -0,0 +1,504 @@
+package org.json.processor;
+
+/*
+Public Domain.
+*/
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a <code>org.json.JSONCodec</code> for each class annotated with
+ * <code>org.json.JSONBean</code>, and the
+ * <code>META-INF/services/org.json.JSONCodec</code> file listing them, so the
+ * JSON library finds the codecs at run time.
+ * <p>
+ * The properties are found with the rules of the reflection based conversions
+ * of the library, applied to the source: the getters and record components
+ * written by <code>new JSONObject(bean)</code>, and the canonical constructor of
+ * a record, or the public constructor and setters of a class, used by
+ * <code>JSONObject.toBean(Class)</code>, with the keys given by the naming
+ * rules and the <code>JSONPropertyName</code> and
+ * <code>JSONPropertyIgnore</code> annotations.
+ */
+@SupportedAnnotationTypes(JSONCodecProcessor.JSON_BEAN)
+public final class JSONCodecProcessor extends AbstractProcessor {
+    static final String JSON_BEAN = "org.json.JSONBean";
+    private static final String PROPERTY_NAME = "org.json.JSONPropertyName";
+    private static final String PROPERTY_IGNORE = "org.json.JSONPropertyIgnore";
+    private static final String SERVICES = "META-INF/services/org.json.JSONCodec";
+
+    /**
+     * The binary names of the codecs generated so far.
+     */
+    private final Set<String> codecs = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(annotation)) {
+                try {
+                    BeanModel model = model((TypeElement) element);
+                    this.codecs.add(new CodecSource(this.processingEnv, model).write());
+                } catch (ProcessingException e) {
+                    error(e.getMessage(), e.element);
+                } catch (IOException e) {
+                    error("Unable to write the codec: " + e, element);
+                }
+            }
+        }
+        if (round.processingOver() && !this.codecs.isEmpty()) {
+            try {
+                writeServices();
+            } catch (IOException e) {
+                error("Unable to write " + SERVICES + ": " + e, null);
+            }
+        }
+        return true;
+    }
+
+    private void error(String message, Element element) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Writes the service file, keeping the codecs listed by a previous
+     * compilation into the same output.
+     */
+    private void writeServices() throws IOException {
+        Set<String> names = new TreeSet<>(this.codecs);
+        try {
+            FileObject existing = this.processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+            try (Reader reader = existing.openReader(true);
+                 BufferedReader lines = new BufferedReader(reader)) {
+                for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                    if (!line.isBlank()) {
+                        names.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException ignore) {
+            // no previous file
+        }
+        FileObject file = this.processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+        try (Writer writer = file.openWriter()) {
+            for (String name : names) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Signals a class which can't have a codec.
+     */
+    static final class ProcessingException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final transient Element element;
+
+        ProcessingException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    /**
+     * A getter, or a record component, and its key.
+     */
+    static final class Getter {
+        final String key;
+        final String method;
+        final TypeMirror type;
+
+        Getter(String key, String method, TypeMirror type) {
+            this.key = key;
+            this.method = method;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A constructor parameter, or a setter, and its key. The key of an ignored
+     * record component is null.
+     */
+    static final class Slot {
+        final String key;
+        final TypeMirror type;
+        /**
+         * The name of the setter, or null for a constructor parameter.
+         */
+        final String setter;
+
+        Slot(String key, TypeMirror type, String setter) {
+            this.key = key;
+            this.type = type;
+            this.setter = setter;
+        }
+    }
+
+    /**
+     * The properties of a class annotated with <code>JSONBean</code>.
+     */
+    static final class BeanModel {
+        final TypeElement type;
+        final List<Getter> getters = new ArrayList<>();
+        final List<Slot> parameters = new ArrayList<>();
+        final List<Slot> setters = new ArrayList<>();
+
+        BeanModel(TypeElement type) {
+            this.type = type;
+        }
+    }
+
+    private BeanModel model(TypeElement type) throws ProcessingException {
+        if (type.getKind() != ElementKind.CLASS && type.getKind() != ElementKind.RECORD) {
+            throw new ProcessingException("@JSONBean only applies to classes and records.", type);
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+            throw new ProcessingException("@JSONBean classes can't be abstract or generic.", type);
+        }
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement) e;
+            if (!t.getModifiers().contains(Modifier.PUBLIC)
+                    || t.getNestingKind() == NestingKind.MEMBER && t.getKind() == ElementKind.CLASS
+                    && !t.getModifiers().contains(Modifier.STATIC)
+                    || t.getNestingKind() == NestingKind.LOCAL || t.getNestingKind() == NestingKind.ANONYMOUS) {
+                throw new ProcessingException("@JSONBean classes must be public, and static if nested.", type);
+            }
+        }
+        BeanModel model = new BeanModel(type);
+        findGetters(model);
+        findCreator(model);
+        return model;
+    }
+
+    private List<ExecutableElement> methods(TypeElement type) {
+        return ElementFilter.methodsIn(this.processingEnv.getElementUtils().getAllMembers(type));
+    }
+
+    private void findGetters(BeanModel model) {
+        Set<ExecutableElement> accessors = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        for (RecordComponentElement component : model.type.getRecordComponents()) {
+            ExecutableElement accessor = component.getAccessor();
+            accessors.add(accessor);
+            String key = componentKey(component);
+            if (key != null && keys.add(key)) {
+                model.getters.add(new Getter(key, accessor.getSimpleName().toString(), component.asType()));
+            }
+        }
+        for (ExecutableElement method : methods(model.type)) {
+            if (accessors.contains(method)) {
+                continue;
+            }
+            String key = getterKey(method);
+            if (key != null && keys.add(key)) {
+                model.getters.add(new Getter(key, method.getSimpleName().toString(), method.getReturnType()));
+            }
+        }
+    }
+
+    private void findCreator(BeanModel model) throws ProcessingException {
+        TypeElement type = model.type;
+        Set<String> keys = new HashSet<>();
+        if (type.getKind() == ElementKind.RECORD) {
+            for (RecordComponentElement component : type.getRecordComponents()) {
+                String key = componentKey(component);
+                keys.add(key);
+                model.parameters.add(new Slot(key, component.asType(), null));
+            }
+            return;
+        }
+        ExecutableElement best = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            int count = constructor.getParameters().size();
+            if (count == 0) {
+                best = constructor;
+                break;
+            }
+            if (best == null || count > best.getParameters().size()) {
+                best = constructor;
+            }
+        }
+        if (best == null) {
+            throw new ProcessingException("@JSONBean classes need a public constructor.", type);
+        }
+        for (VariableElement parameter : best.getParameters()) {
+            String key = annotationValue(parameter.getAnnotationMirrors(), PROPERTY_NAME);
+            if (key == null || key.isEmpty()) {
+                key = parameter.getSimpleName().toString();
+            }
+            keys.add(key);
+            model.parameters.add(new Slot(key, parameter.asType(), null));
+        }
+        for (ExecutableElement method : methods(type)) {
+            String key = setterKey(type, method);
+            if (key != null && keys.add(key)) {
+                model.setters.add(new Slot(key, method.getParameters().get(0).asType(),
+                        method.getSimpleName().toString()));
+            }
+        }
+    }
+
+    private String componentKey(RecordComponentElement component) {
+        ExecutableElement accessor = component.getAccessor();
+        if (isIgnored(accessor) || has(component.getAnnotationMirrors(), PROPERTY_IGNORE)) {
+            return null;
+        }
+        String name = annotationValue(accessor, PROPERTY_NAME);
+        if (name == null) {
+            name = annotationValue(component.getAnnotationMirrors(), PROPERTY_NAME);
+        }
+        return name != null && !name.isEmpty() ? name : component.getSimpleName().toString();
+    }
+
+    private static boolean isGetter(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        String name = method.getSimpleName().toString();
+        return modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.STATIC)
+                && method.getParameters().isEmpty()
+                && method.getReturnType().getKind() != TypeKind.VOID
+                && !"getClass".equals(name) && !"getDeclaringClass".equals(name);
+    }
+
+    private String getterKey(ExecutableElement method) {
+        if (!isGetter(method) || isIgnored(method)) {
+            return null;
+        }
+        String name = annotationValue(method, PROPERTY_NAME);
+        if (name != null && !name.isEmpty()) {
+            return name;
+        }
+        String methodName = method.getSimpleName().toString();
+        if (methodName.startsWith("get") && methodName.length() > 3) {
+            return keyFromName(methodName.substring(3));
+        } else if (methodName.startsWith("is") && methodName.length() > 2) {
+            return keyFromName(methodName.substring(2));
+        }
+        return null;
+    }
+
+    private String setterKey(TypeElement type, ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        String name = method.getSimpleName().toString();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                || method.getParameters().size() != 1
+                || !name.startsWith("set") || name.length() <= 3) {
+            return null;
+        }
+        ExecutableElement annotated = method;
+        if (depth(method, PROPERTY_NAME) < 0 && depth(method, PROPERTY_IGNORE) < 0) {
+            for (ExecutableElement getter : methods(type)) {
+                String getterName = getter.getSimpleName().toString();
+                if (isGetter(getter) && (getterName.equals("get" + name.substring(3))
+                        || getterName.equals("is" + name.substring(3)))) {
+                    annotated = getter;
+                    break;
+                }
+            }
+        }
+        if (isIgnored(annotated)) {
+            return null;
+        }
+        String key = annotationValue(annotated, PROPERTY_NAME);
+        if (key != null && !key.isEmpty()) {
+            return key;
+        }
+        return keyFromName(name.substring(3));
+    }
+
+    /**
+     * Computes a key from a getter or setter name, as the library does.
+     */
+    private static String keyFromName(String key) {
+        if (Character.isLowerCase(key.charAt(0))) {
+            return null;
+        }
+        if (key.length() == 1) {
+            key = key.toLowerCase(Locale.ROOT);
+        } else if (!Character.isUpperCase(key.charAt(1))) {
+            key = key.substring(0, 1).toLowerCase(Locale.ROOT) + key.substring(1);
+        }
+        return key;
+    }
+
+    private boolean isIgnored(ExecutableElement method) {
+        int ignoreDepth = depth(method, PROPERTY_IGNORE);
+        if (ignoreDepth > 0) {
+            int forcedNameDepth = depth(method, PROPERTY_NAME);
+            return forcedNameDepth < 0 || ignoreDepth <= forcedNameDepth;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the public method of a type, declared or inherited, with the
+     * name and parameter types of another method.
+     */
+    private ExecutableElement find(TypeMirror type, ExecutableElement method) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        for (ExecutableElement candidate : methods(element)) {
+            if (candidate.getModifiers().contains(Modifier.PUBLIC)
+                    && candidate.getSimpleName().equals(method.getSimpleName())
+                    && sameParameters(candidate, method)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean sameParameters(ExecutableElement a, ExecutableElement b) {
+        List<? extends VariableElement> pa = a.getParameters();
+        List<? extends VariableElement> pb = b.getParameters();
+        if (pa.size() != pb.size()) {
+            return false;
+        }
+        for (int i = 0; i < pa.size(); i += 1) {
+            if (!this.processingEnv.getTypeUtils().isSameType(
+                    this.processingEnv.getTypeUtils().erasure(pa.get(i).asType()),
+                    this.processingEnv.getTypeUtils().erasure(pb.get(i).asType()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isObject(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) type).asElement())
+                .getQualifiedName().contentEquals("java.lang.Object");
+    }
+
+    /**
+     * The depth of an annotation in the hierarchy of a method, searched like
+     * the library does: the method, then the interfaces of its class, then its
+     * superclass.
+     *
+     * @return the depth, 1 for the method itself, or -1 if the annotation is
+     * not found.
+     */
+    private int depth(ExecutableElement method, String annotation) {
+        if (has(method.getAnnotationMirrors(), annotation)) {
+            return 1;
+        }
+        TypeElement declaring = (TypeElement) method.getEnclosingElement();
+        TypeMirror superclass = declaring.getSuperclass();
+        if (superclass.getKind() == TypeKind.NONE) {
+            return -1;
+        }
+        for (TypeMirror iface : declaring.getInterfaces()) {
+            ExecutableElement overridden = find(iface, method);
+            if (overridden != null) {
+                int d = depth(overridden, annotation);
+                if (d > 0) {
+                    return d + 1;
+                }
+            }
+        }
+        if (isObject(superclass)) {
+            return -1;
+        }
+        ExecutableElement overridden = find(superclass, method);
+        if (overridden != null) {
+            int d = depth(overridden, annotation);
+            if (d > 0) {
+                return d + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The value of an annotation in the hierarchy of a method, searched like
+     * the library does.
+     *
+     * @return the value, or null if the annotation is not found.
+     */
+    private String annotationValue(ExecutableElement method, String annotation) {
+        if (has(method.getAnnotationMirrors(), annotation)) {
+            return annotationValue(method.getAnnotationMirrors(), annotation);
+        }
+        TypeElement declaring = (TypeElement) method.getEnclosingElement();
+        TypeMirror superclass = declaring.getSuperclass();
+        if (superclass.getKind() == TypeKind.NONE) {
+            return null;
+        }
+        for (TypeMirror iface : declaring.getInterfaces()) {
+            ExecutableElement overridden = find(iface, method);
+            if (overridden != null) {
+                return annotationValue(overridden, annotation);
+            }
+        }
+        if (isObject(superclass)) {
+            return null;
+        }
+        ExecutableElement overridden = find(superclass, method);
+        return overridden == null ? null : annotationValue(overridden, annotation);
+    }
+
+    private static boolean has(List<? extends AnnotationMirror> mirrors, String annotation) {
+        for (AnnotationMirror mirror : mirrors) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String annotationValue(List<? extends AnnotationMirror> mirrors, String annotation) {
+        for (AnnotationMirror mirror : mirrors) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                        : mirror.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return String.valueOf(entry.getValue().getValue());
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
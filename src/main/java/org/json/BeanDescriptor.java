@@ -0,0 +1,501 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The properties of a bean class, as used by {@link JSONObject#JSONObject(Object)}:
+ * its getters and the keys they are written under. Finding them walks the
+ * methods of the class and the annotations of their overridden declarations,
+ * so they are found once per class and kept in a {@link ClassValue}, which
+ * doesn't keep the class from being unloaded.
+ * <p>
+ * The components of a record are written under their names, through their
+ * accessors, followed by the getters the record declares besides them. The
+ * {@link JSONPropertyName} and {@link JSONPropertyIgnore} annotations of a
+ * component apply to it as they do to a getter.
+ * <p>
+ * The getters are called through a {@link Function} spun by
+ * {@link LambdaMetafactory} for each of them, which the JIT compiler can inline
+ * like a hand-written call, rather than through {@link Method#invoke}, which
+ * checks the access and boxes the arguments on every call.
+ */
+final class BeanDescriptor {
+    private static final ClassValue<BeanDescriptor> DESCRIPTORS = new ClassValue<>() {
+        @Override
+        protected BeanDescriptor computeValue(Class<?> type) {
+            return new BeanDescriptor(type);
+        }
+    };
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType FUNCTION_TYPE = MethodType.methodType(Function.class);
+    private static final MethodType APPLY_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * A getter and its key.
+     */
+    static final class Property {
+        final String key;
+        final Method method;
+        /**
+         * Calls the getter, or null if the getter can't be accessed.
+         */
+        private final Function<Object, Object> accessor;
+
+        Property(String key, Method method) {
+            this.key = key;
+            this.method = method;
+            this.accessor = accessor(method);
+        }
+
+        /**
+         * Calls the getter on a bean, with the same outcomes as
+         * {@link Method#invoke(Object, Object...)}.
+         *
+         * @param bean the bean
+         * @return the value returned by the getter
+         * @throws IllegalAccessException    If the getter can't be accessed.
+         * @throws InvocationTargetException If the getter threw an exception.
+         */
+        Object get(Object bean) throws IllegalAccessException, InvocationTargetException {
+            if (this.accessor == null) {
+                throw new IllegalAccessException("Can't access " + this.method);
+            }
+            try {
+                return this.accessor.apply(bean);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    /**
+     * Makes the fastest accessor possible for a getter: a lambda calling it
+     * directly if its class is visible from this package, a method handle
+     * otherwise, or null if it can't be accessed at all.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> accessor(Method method) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // Method.invoke would fail the same way
+            return null;
+        }
+        if (!isVisible(method.getDeclaringClass()) || !isVisible(method.getReturnType())) {
+            // the lambda would be linked through the class loader of this package
+            return generic(handle);
+        }
+        try {
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply", FUNCTION_TYPE, APPLY_TYPE, handle,
+                    MethodType.methodType(handle.type().wrap().returnType(), method.getDeclaringClass()));
+            return (Function<Object, Object>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            // for example a class of a module this package can't link to
+            return generic(handle);
+        }
+    }
+
+    private static Function<Object, Object> generic(MethodHandle handle) {
+        MethodHandle generic = handle.asType(APPLY_TYPE);
+        return bean -> {
+            try {
+                return generic.invokeExact(bean);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * Checks if a class can be resolved by its name from this package.
+     */
+    private static boolean isVisible(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        try {
+            return Class.forName(type.getName(), false, BeanDescriptor.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private final Property[] properties;
+    private final boolean duplicateKeys;
+
+    private BeanDescriptor(Class<?> klass) {
+        // If klass is a System class then set includeSuperClass to false.
+
+        boolean includeSuperClass = klass.getClassLoader() != null;
+
+        Method[] methods = includeSuperClass ? klass.getMethods() : klass.getDeclaredMethods();
+        List<Property> found = new ArrayList<>(methods.length);
+        Set<Method> accessors = null;
+        Set<String> componentKeys = null;
+        if (klass.isRecord()) {
+            RecordComponent[] components = klass.getRecordComponents();
+            accessors = new HashSet<>(components.length * 2);
+            componentKeys = new HashSet<>(components.length * 2);
+            for (final RecordComponent component : components) {
+                final Method accessor = component.getAccessor();
+                accessors.add(accessor);
+                final String key = getKeyNameFromAccessor(accessor, component.getName());
+                if (key != null) {
+                    componentKeys.add(key);
+                    found.add(new Property(key, accessor));
+                }
+            }
+        }
+        for (final Method method : methods) {
+            if (accessors != null && accessors.contains(method)) {
+                continue;
+            }
+            final String key = getKeyNameFromMethod(method);
+            if (key != null && !key.isEmpty()
+                    && (componentKeys == null || !componentKeys.contains(key))) {
+                found.add(new Property(key, method));
+            }
+        }
+        this.properties = found.toArray(new Property[0]);
+        Set<String> keys = new HashSet<>(this.properties.length * 2);
+        boolean duplicates = false;
+        for (Property property : this.properties) {
+            duplicates |= !keys.add(property.key);
+        }
+        this.duplicateKeys = duplicates;
+    }
+
+    /**
+     * Get the descriptor of a bean class.
+     *
+     * @param klass the class of the bean
+     * @return the descriptor
+     */
+    static BeanDescriptor of(Class<?> klass) {
+        return DESCRIPTORS.get(klass);
+    }
+
+    /**
+     * Get the properties: the components of a record in their declaration
+     * order, then the getters in the order of the methods of the class.
+     *
+     * @return the properties. The array must not be modified.
+     */
+    Property[] properties() {
+        return this.properties;
+    }
+
+    /**
+     * Checks if several getters share a key, such as <code>getValue</code> and
+     * <code>isValue</code>. Which of them ends up in a JSONObject depends on
+     * their values.
+     *
+     * @return true if a key belongs to more than one property.
+     */
+    boolean hasDuplicateKeys() {
+        return this.duplicateKeys;
+    }
+
+    private static boolean isValidMethodName(String name) {
+        return !"getClass".equals(name) && !"getDeclaringClass".equals(name);
+    }
+
+    /**
+     * Computes the key of a getter, following the naming rules and the
+     * {@link JSONPropertyName} and {@link JSONPropertyIgnore} annotations.
+     *
+     * @param method the method to check
+     * @return the key, or null if the method is not a getter or is ignored.
+     */
+    static String getKeyNameFromMethod(Method method) {
+        if (!isValidMethod(method) || isIgnored(method)) {
+            return null;
+        }
+        JSONPropertyName annotation = getAnnotation(method, JSONPropertyName.class);
+        if (annotationValueNotEmpty(annotation)) {
+            return annotation.value();
+        }
+        final String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3) {
+            return keyFromName(name.substring(3));
+        } else if (name.startsWith("is") && name.length() > 2) {
+            return keyFromName(name.substring(2));
+        }
+        return null;
+    }
+
+    /**
+     * Computes the key of a property from the part of its getter or setter
+     * name following <code>get</code>, <code>is</code> or <code>set</code>.
+     *
+     * @param key the name of the property
+     * @return the key, or null if the name doesn't start with an uppercase letter.
+     */
+    private static String keyFromName(String key) {
+        // if the first letter in the key is not uppercase, then skip.
+        // This is to maintain backwards compatibility before PR406
+        // (https://github.com/stleary/JSON-java/pull/406/)
+        if (Character.isLowerCase(key.charAt(0))) {
+            return null;
+        }
+        if (key.length() == 1) {
+            key = key.toLowerCase(Locale.ROOT);
+        } else if (!Character.isUpperCase(key.charAt(1))) {
+            key = key.substring(0, 1).toLowerCase(Locale.ROOT) + key.substring(1);
+        }
+        return key;
+    }
+
+    /**
+     * Computes the key of a record component, following the
+     * {@link JSONPropertyName} and {@link JSONPropertyIgnore} annotations.
+     *
+     * @param accessor the accessor of the component
+     * @param name     the name of the component
+     * @return the key, or null if the component is ignored.
+     */
+    static String getKeyNameFromAccessor(Method accessor, String name) {
+        if (isIgnored(accessor)) {
+            return null;
+        }
+        JSONPropertyName annotation = getAnnotation(accessor, JSONPropertyName.class);
+        if (annotationValueNotEmpty(annotation)) {
+            return annotation.value();
+        }
+        return name;
+    }
+
+    /**
+     * Computes the key of a setter, used to bind a JSONObject to a bean. The
+     * {@link JSONPropertyName} and {@link JSONPropertyIgnore} annotations of the
+     * setter apply, or if it has none, those of the matching getter, so a
+     * renamed or ignored getter has its setter renamed or ignored too.
+     *
+     * @param klass  the class of the bean
+     * @param method the method to check
+     * @return the key, or null if the method is not a setter or is ignored.
+     */
+    static String getKeyNameFromSetter(Class<?> klass, Method method) {
+        final int modifiers = method.getModifiers();
+        final String name = method.getName();
+        if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers)
+                || method.getParameterCount() != 1 || method.isBridge()
+                || !name.startsWith("set") || name.length() <= 3) {
+            return null;
+        }
+        Method annotated = method;
+        if (getAnnotationDepth(method, JSONPropertyName.class) < 0
+                && getAnnotationDepth(method, JSONPropertyIgnore.class) < 0) {
+            Method getter = getter(klass, name.substring(3));
+            if (getter != null) {
+                annotated = getter;
+            }
+        }
+        if (isIgnored(annotated)) {
+            return null;
+        }
+        JSONPropertyName annotation = getAnnotation(annotated, JSONPropertyName.class);
+        if (annotationValueNotEmpty(annotation)) {
+            return annotation.value();
+        }
+        return keyFromName(name.substring(3));
+    }
+
+    private static Method getter(Class<?> klass, String property) {
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                Method getter = klass.getMethod(prefix + property);
+                if (isValidMethod(getter)) {
+                    return getter;
+                }
+            } catch (NoSuchMethodException | SecurityException ignore) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the key of a constructor parameter, used to bind a JSONObject
+     * to a bean: the value of its {@link JSONPropertyName} annotation, or its
+     * name if the class was compiled with <code>-parameters</code>.
+     *
+     * @param parameter the parameter
+     * @return the key, or null if the parameter has no known name.
+     */
+    static String getKeyNameFromParameter(Parameter parameter) {
+        JSONPropertyName annotation = parameter.getAnnotation(JSONPropertyName.class);
+        if (annotationValueNotEmpty(annotation)) {
+            return annotation.value();
+        }
+        return parameter.isNamePresent() ? parameter.getName() : null;
+    }
+
+    private static boolean isIgnored(Method method) {
+        final int ignoreDepth = getAnnotationDepth(method, JSONPropertyIgnore.class);
+        if (ignoreDepth > 0) {
+            final int forcedNameDepth = getAnnotationDepth(method, JSONPropertyName.class);
+            // the hierarchy asked to ignore, and the nearest name override
+            // was higher or non-existent
+            return forcedNameDepth < 0 || ignoreDepth <= forcedNameDepth;
+        }
+        return false;
+    }
+
+    /**
+     * checks if the annotation is not null and the {@link JSONPropertyName#value()} is not null and is not empty.
+     *
+     * @param annotation the annotation to check
+     * @return true if the annotation and the value is not null and not empty, false otherwise.
+     */
+    private static boolean annotationValueNotEmpty(JSONPropertyName annotation) {
+        return annotation != null && annotation.value() != null && !annotation.value().isEmpty();
+    }
+
+    /**
+     * Checks if the method is valid for the {@link JSONObject#JSONObject(Object)} use case
+     *
+     * @param method the Method to check
+     * @return true, if valid, false otherwise.
+     */
+    private static boolean isValidMethod(Method method) {
+        final int modifiers = method.getModifiers();
+        return Modifier.isPublic(modifiers)
+                && !Modifier.isStatic(modifiers)
+                && method.getParameterTypes().length == 0
+                && !method.isBridge()
+                && method.getReturnType() != Void.TYPE
+                && isValidMethodName(method.getName());
+    }
+
+    /**
+     * Searches the class hierarchy to see if the method or it's super
+     * implementations and interfaces has the annotation.
+     *
+     * @param <A>             type of the annotation
+     * @param m               method to check
+     * @param annotationClass annotation to look for
+     * @return the {@link Annotation} if the annotation exists on the current method
+     * or one of its super class definitions
+     */
+    private static <A extends Annotation> A getAnnotation(final Method m, final Class<A> annotationClass) {
+        // if we have invalid data the result is null
+        if (m == null || annotationClass == null) {
+            return null;
+        }
+
+        if (m.isAnnotationPresent(annotationClass)) {
+            return m.getAnnotation(annotationClass);
+        }
+
+        // if we've already reached the Object class, return null;
+        Class<?> c = m.getDeclaringClass();
+        if (c.getSuperclass() == null) {
+            return null;
+        }
+
+        // check directly implemented interfaces for the method being checked
+        for (Class<?> i : c.getInterfaces()) {
+            try {
+                Method im = i.getMethod(m.getName(), m.getParameterTypes());
+                return getAnnotation(im, annotationClass);
+            } catch (final SecurityException | NoSuchMethodException ignored) {
+            }
+        }
+
+        //If the superclass is Object, no annotations will be found any more
+        if (Object.class.equals(c.getSuperclass()))
+            return null;
+
+        try {
+            return getAnnotation(
+                    c.getSuperclass().getMethod(m.getName(), m.getParameterTypes()),
+                    annotationClass);
+        } catch (final SecurityException | NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Searches the class hierarchy to see if the method or it's super
+     * implementations and interfaces has the annotation. Returns the depth of the
+     * annotation in the hierarchy.
+     *
+     * @param m               method to check
+     * @param annotationClass annotation to look for
+     * @return Depth of the annotation or -1 if the annotation is not on the method.
+     */
+    private static int getAnnotationDepth(final Method m, final Class<? extends Annotation> annotationClass) {
+        // if we have invalid data the result is -1
+        if (m == null || annotationClass == null) {
+            return -1;
+        }
+
+        if (m.isAnnotationPresent(annotationClass)) {
+            return 1;
+        }
+
+        // if we've already reached the Object class, return -1;
+        Class<?> c = m.getDeclaringClass();
+        if (c.getSuperclass() == null) {
+            return -1;
+        }
+
+        // check directly implemented interfaces for the method being checked
+        for (Class<?> i : c.getInterfaces()) {
+            try {
+                Method im = i.getMethod(m.getName(), m.getParameterTypes());
+                int d = getAnnotationDepth(im, annotationClass);
+                if (d > 0) {
+                    // since the annotation was on the interface, add 1
+                    return d + 1;
+                }
+            } catch (final SecurityException | NoSuchMethodException ignored) {
+            }
+        }
+
+        //If the superclass is Object, no annotations will be found any more
+        if (Object.class.equals(c.getSuperclass()))
+            return -1;
+
+        try {
+            int d = getAnnotationDepth(
+                    c.getSuperclass().getMethod(m.getName(), m.getParameterTypes()),
+                    annotationClass);
+            if (d > 0) {
+                // since the annotation was on the superclass, add 1
+                return d + 1;
+            }
+            return -1;
+        } catch (final SecurityException | NoSuchMethodException ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The {@link JSONCodec}s found with {@link ServiceLoader}, by the class they
+ * convert. They are loaded the first time a codec is looked up, from the class
+ * loader of this package and the context class loader of the thread; codecs
+ * which fail to load are skipped.
+ */
+final class CodecRegistry {
+    private CodecRegistry() {
+    }
+
+    /**
+     * Loads the codecs on first use.
+     */
+    private static final class Holder {
+        static final Map<Class<?>, JSONCodec<?>> CODECS = load();
+    }
+
+    private static Map<Class<?>, JSONCodec<?>> load() {
+        Map<Class<?>, JSONCodec<?>> codecs = new HashMap<>();
+        ClassLoader loader = JSONCodec.class.getClassLoader();
+        load(codecs, loader);
+        ClassLoader context = Thread.currentThread().getContextClassLoader();
+        if (context != null && context != loader) {
+            load(codecs, context);
+        }
+        return codecs;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static void load(Map<Class<?>, JSONCodec<?>> codecs, ClassLoader loader) {
+        Iterator<JSONCodec> providers = ServiceLoader.load(JSONCodec.class, loader).iterator();
+        for (; ; ) {
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                JSONCodec<?> codec = providers.next();
+                codecs.putIfAbsent(codec.type(), codec);
+            } catch (ServiceConfigurationError ignore) {
+                // a codec of a class missing from the class path
+            }
+        }
+    }
+
+    /**
+     * Get the codec of a class.
+     *
+     * @param type the class
+     * @return the codec, or null if the class has none.
+     */
+    @SuppressWarnings("unchecked")
+    static JSONCodec<Object> forClass(Class<?> type) {
+        return (JSONCodec<Object>) Holder.CODECS.get(type);
+    }
+}
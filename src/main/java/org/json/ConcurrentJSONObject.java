@@ -0,0 +1,315 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A JSONObject that can be shared and updated by many threads at once. The
+ * properties are kept in a {@link ConcurrentHashMap}, and the read-modify-write
+ * methods {@link #increment(String)}, {@link #accumulate(String, Object)},
+ * {@link #append(String, Object)} and {@link #putOnce(String, Object)} are
+ * atomic per key, so no external locking is needed to build live aggregates
+ * such as metrics documents.
+ * <p>
+ * Counters created by {@link #increment(String)} or {@link #counter(String)} are
+ * stored as {@link LongAdder}s, which are updated without locking and scale
+ * across cores. They are still {@link Number}s, so the typed getters such as
+ * {@link #getLong(String)} work on them as usual.
+ * <p>
+ * JSONArrays held by this object are never modified in place by
+ * <code>accumulate</code> or <code>append</code>. A new array is stored
+ * instead, so a reader that already obtained an array never sees it change.
+ * <p>
+ * {@link #write(Writer, int, int)}, {@link #toString()} and {@link #toMap()}
+ * work on a {@link #snapshot()}, which reflects the state of each key at some
+ * point during the call, but not necessarily one single point in time for the
+ * whole object.
+ */
+public class ConcurrentJSONObject extends JSONObject {
+    /**
+     * The map where the properties are kept, shared with the JSONObject base.
+     */
+    private final ConcurrentHashMap<String, Object> map;
+
+    /**
+     * Construct an empty ConcurrentJSONObject.
+     */
+    public ConcurrentJSONObject() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Construct an empty ConcurrentJSONObject with the given initial capacity.
+     *
+     * @param initialCapacity initial capacity of the internal map.
+     */
+    public ConcurrentJSONObject(int initialCapacity) {
+        this(new ConcurrentHashMap<>(initialCapacity));
+    }
+
+    private ConcurrentJSONObject(ConcurrentHashMap<String, Object> map) {
+        super(() -> map);
+        this.map = map;
+    }
+
+    /**
+     * Accumulate values under a key, atomically. See
+     * {@link JSONObject#accumulate(String, Object)} for the semantics. If there is
+     * already a JSONArray under the key, a copy with the value appended replaces it.
+     *
+     * @param key   A key string.
+     * @param value An object to be accumulated under the key.
+     * @return this.
+     * @throws JSONException        If the value is non-finite number.
+     * @throws NullPointerException If the key is <code>null</code>.
+     */
+    @Override
+    public JSONObject accumulate(String key, Object value) throws JSONException {
+        testValidity(value);
+        map.compute(key, (k, current) -> {
+            if (current == null) {
+                return value instanceof JSONArray ? new JSONArray().put(value) : value;
+            }
+            if (current instanceof JSONArray) {
+                return appendedCopy((JSONArray) current, value);
+            }
+            return new JSONArray(2).put(current).put(value);
+        });
+        return this;
+    }
+
+    /**
+     * Append values to the array under a key, atomically. See
+     * {@link JSONObject#append(String, Object)} for the semantics. If there is
+     * already a JSONArray under the key, a copy with the value appended replaces it.
+     *
+     * @param key   A key string.
+     * @param value An object to be accumulated under the key.
+     * @return this.
+     * @throws JSONException        If the value is non-finite number or if the current value associated with
+     *                              the key is not a JSONArray.
+     * @throws NullPointerException If the key is <code>null</code>.
+     */
+    @Override
+    public JSONObject append(String key, Object value) throws JSONException {
+        testValidity(value);
+        map.compute(key, (k, current) -> {
+            if (current == null) {
+                return new JSONArray().put(value);
+            }
+            if (current instanceof JSONArray) {
+                return appendedCopy((JSONArray) current, value);
+            }
+            throw wrongValueFormatException(k, "JSONArray", null, null);
+        });
+        return this;
+    }
+
+    /**
+     * Get the lock-free counter stored under a key, creating it with a value of 0
+     * if there is no such property. If the property holds an integral number, it
+     * is atomically replaced by a counter starting at that value.
+     *
+     * @param key A key string.
+     * @return the counter stored under the key.
+     * @throws JSONException        If there is already a property with this name that is not an
+     *                              Integer, Long, Short, Byte or counter.
+     * @throws NullPointerException If the key is <code>null</code>.
+     */
+    public LongAdder counter(String key) throws JSONException {
+        Object value = map.get(key);
+        if (value instanceof LongAdder) {
+            return (LongAdder) value;
+        }
+        return (LongAdder) map.compute(key, (k, current) -> {
+            if (current instanceof LongAdder) {
+                return current;
+            }
+            LongAdder counter = new LongAdder();
+            if (current instanceof Integer || current instanceof Long
+                    || current instanceof Short || current instanceof Byte) {
+                counter.add(((Number) current).longValue());
+            } else if (current != null) {
+                throw new JSONException("Unable to make a counter of [" + quote(k) + "].");
+            }
+            return counter;
+        });
+    }
+
+    /**
+     * Determine if the ConcurrentJSONObject contains a specific key.
+     *
+     * @param key A key string.
+     * @return true if the key exists in the ConcurrentJSONObject.
+     */
+    @Override
+    public boolean has(String key) {
+        return key != null && map.containsKey(key);
+    }
+
+    /**
+     * Increment a property, atomically. If there is no such property, a
+     * {@link LongAdder} counter with a value of 1 is created. Counters are
+     * incremented without locking, all other numeric types as described in
+     * {@link JSONObject#increment(String)}.
+     *
+     * @param key A key string.
+     * @return this.
+     * @throws JSONException        If there is already a property with this name that is not an
+     *                              Integer, Long, Double, Float, BigInteger, BigDecimal or counter.
+     * @throws NullPointerException If the key is <code>null</code>.
+     */
+    @Override
+    public JSONObject increment(String key) throws JSONException {
+        Object value = map.get(key);
+        if (value == null) {
+            LongAdder counter = new LongAdder();
+            value = map.putIfAbsent(key, counter);
+            if (value == null) {
+                value = counter;
+            }
+        }
+        if (value instanceof LongAdder) {
+            ((LongAdder) value).increment();
+            return this;
+        }
+        map.compute(key, (k, current) -> {
+            if (current == null) {
+                return 1;
+            } else if (current instanceof LongAdder) {
+                ((LongAdder) current).increment();
+                return current;
+            } else if (current instanceof Integer) {
+                return (Integer) current + 1;
+            } else if (current instanceof Long) {
+                return (Long) current + 1L;
+            } else if (current instanceof BigInteger) {
+                return ((BigInteger) current).add(BigInteger.ONE);
+            } else if (current instanceof Float) {
+                return (Float) current + 1.0f;
+            } else if (current instanceof Double) {
+                return (Double) current + 1.0d;
+            } else if (current instanceof BigDecimal) {
+                return ((BigDecimal) current).add(BigDecimal.ONE);
+            }
+            throw new JSONException("Unable to increment [" + quote(k) + "].");
+        });
+        return this;
+    }
+
+    /**
+     * Put a key/value pair in the ConcurrentJSONObject, but only if the key and
+     * the value are both non-null, and only if there is not already a member with
+     * that name. The check and the put happen atomically.
+     *
+     * @param key   key to insert into
+     * @param value value to insert
+     * @return this.
+     * @throws JSONException if the key is a duplicate
+     */
+    @Override
+    public JSONObject putOnce(String key, Object value) throws JSONException {
+        if (key != null && value != null) {
+            testValidity(value);
+            if (map.putIfAbsent(key, value) != null) {
+                throw new JSONException("Duplicate key \"" + key + "\"");
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Remove a name and its value, if present.
+     *
+     * @param key The name to be removed.
+     * @return The value that was associated with the name, or null if there was
+     * no value.
+     */
+    @Override
+    public Object remove(String key) {
+        return key == null ? null : map.remove(key);
+    }
+
+    /**
+     * Make a plain JSONObject holding the current properties of this object.
+     * Counters are replaced by their current sum as a Long. Nested values are
+     * shared with this object, not copied.
+     *
+     * @return A new JSONObject with the current properties.
+     */
+    public JSONObject snapshot() {
+        JSONObject snapshot = new JSONObject(map.size());
+        for (Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof LongAdder) {
+                value = ((LongAdder) value).sum();
+            }
+            snapshot.put(entry.getKey(), value);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Not supported: the counters of a ConcurrentJSONObject change without any
+     * call to its methods, so its JSON text can't be cached. Cache the text of a
+     * {@link #snapshot()} instead.
+     *
+     * @param caching ignored
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setCachingSerializedForm(boolean caching) {
+        throw new UnsupportedOperationException("A ConcurrentJSONObject can't cache its JSON text.");
+    }
+
+    /**
+     * Make a deep copy of a {@link #snapshot()} of this object. The copy is a plain
+     * JSONObject.
+     *
+     * @return A new JSONObject with the current content of this one.
+     */
+    @Override
+    public JSONObject deepCopy() {
+        return snapshot().deepCopy();
+    }
+
+    /**
+     * Returns a java.util.Map containing all of the entries of a
+     * {@link #snapshot()} of this object.
+     *
+     * @return a java.util.Map containing the entries of this object
+     */
+    @Override
+    public Map<String, Object> toMap() {
+        return snapshot().toMap();
+    }
+
+    /**
+     * Write a {@link #snapshot()} of this object as JSON text to a writer. All
+     * the public write and toString methods end up here.
+     *
+     * @param writer  Writes the serialized JSON
+     * @param printer The whitespace style, or null for compact text.
+     * @param indent  The indentation of the top level, in indentation characters.
+     * @return The writer.
+     * @throws JSONException if a called function has an error or a write error
+     *                       occurs
+     */
+    @Override
+    Writer write(Writer writer, JSONPrettyPrinter printer, int indent) throws JSONException {
+        return snapshot().write(writer, printer, indent);
+    }
+
+    private static JSONArray appendedCopy(JSONArray array, Object value) {
+        return new JSONArray(array.length() + 1).putAll(array).put(value);
+    }
+}
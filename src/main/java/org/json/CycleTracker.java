@@ -0,0 +1,86 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The beans, Maps, Collections and arrays being converted, from the outermost
+ * one to the current one, used to detect a value holding itself. Only those
+ * values are tracked, see {@link ValueKind#isComposite()}: Strings, numbers and
+ * the other leaves can't lead back to a value being converted.
+ * <p>
+ * Bean graphs are usually shallow, so the first values are kept in an array
+ * and compared by identity, which is cheaper than hashing them. The values
+ * nested deeper than {@link #STACK_DEPTH} go to an identity set.
+ */
+final class CycleTracker {
+    /**
+     * The number of values kept in the array.
+     */
+    static final int STACK_DEPTH = 16;
+
+    private final Object[] stack = new Object[STACK_DEPTH];
+    private int depth;
+
+    /**
+     * The values nested deeper than the array, or null.
+     */
+    private Set<Object> deeper;
+
+    /**
+     * Checks if a value is being converted.
+     *
+     * @param value the value
+     * @return true if the value is one of the values entered and not exited yet.
+     */
+    boolean contains(Object value) {
+        for (int i = Math.min(this.depth, STACK_DEPTH) - 1; i >= 0; i--) {
+            if (this.stack[i] == value) {
+                return true;
+            }
+        }
+        return this.depth > STACK_DEPTH && this.deeper.contains(value);
+    }
+
+    /**
+     * Marks a value as being converted.
+     *
+     * @param value the value
+     * @return false if the value is already being converted, in which case it
+     * isn't entered again.
+     */
+    boolean enter(Object value) {
+        if (contains(value)) {
+            return false;
+        }
+        if (this.depth < STACK_DEPTH) {
+            this.stack[this.depth] = value;
+        } else {
+            if (this.deeper == null) {
+                this.deeper = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            this.deeper.add(value);
+        }
+        this.depth += 1;
+        return true;
+    }
+
+    /**
+     * Marks the last value entered as converted.
+     *
+     * @param value the value, the last one entered
+     */
+    void exit(Object value) {
+        this.depth -= 1;
+        if (this.depth < STACK_DEPTH) {
+            this.stack[this.depth] = null;
+        } else {
+            this.deeper.remove(value);
+        }
+    }
+}
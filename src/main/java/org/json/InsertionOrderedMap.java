@@ -0,0 +1,335 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map keeping its String keys in insertion order, used by ordered
+ * {@link JSONObject}s. Instead of allocating a linked node per entry like
+ * {@link java.util.LinkedHashMap}, the keys and values are stored in two
+ * parallel arrays in insertion order, and an open addressing table of
+ * <code>int</code>s maps each key's hash to its position in those arrays.
+ * <p>
+ * Removed entries leave a hole in the arrays, which is reclaimed the next time
+ * the arrays are full. Null keys are not supported.
+ */
+final class InsertionOrderedMap extends AbstractMap<String, Object> {
+    /**
+     * Marks an index slot whose entry was removed, so probe sequences running
+     * across it keep going.
+     */
+    private static final int REMOVED = -1;
+
+    /**
+     * The keys in insertion order. A null key marks a removed entry.
+     */
+    private String[] keys;
+    /**
+     * The values, at the same positions as their keys.
+     */
+    private Object[] values;
+    /**
+     * Open addressing table holding entry position + 1, 0 for a free slot or
+     * {@link #REMOVED}. Its length is a power of two at least twice the length
+     * of {@link #keys}, so it is never more than half full.
+     */
+    private int[] index;
+    /**
+     * Number of positions used in keys and values, including removed entries.
+     */
+    private int used;
+    /**
+     * Number of live entries.
+     */
+    private int size;
+    /**
+     * Structural modification counter, for fail-fast iteration.
+     */
+    private int modCount;
+    private Set<Entry<String, Object>> entrySet;
+
+    InsertionOrderedMap() {
+        this(8);
+    }
+
+    InsertionOrderedMap(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 2));
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        values = new Object[capacity];
+        index = new int[Integer.highestOneBit(capacity - 1) << 2];
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Finds the index slot of a key.
+     *
+     * @return the slot in {@link #index} holding the key, or -1 if it is absent.
+     */
+    private int slotOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int position = index[slot];
+            if (position == 0) {
+                return -1;
+            }
+            if (position != REMOVED && key.equals(keys[position - 1])) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(String key, int position) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] > 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = position + 1;
+    }
+
+    /**
+     * Moves the live entries to new arrays of the given capacity, closing the
+     * holes left by removed entries, and rebuilds the index.
+     */
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldUsed = used;
+        allocate(capacity);
+        int position = 0;
+        for (int i = 0; i < oldUsed; i++) {
+            if (oldKeys[i] != null) {
+                keys[position] = oldKeys[i];
+                values[position] = oldValues[i];
+                insert(oldKeys[i], position);
+                position++;
+            }
+        }
+        used = position;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slotOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : values[index[slot] - 1];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            int position = index[slot] - 1;
+            Object previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+        if (key == null) {
+            throw new NullPointerException("Null key.");
+        }
+        if (used == keys.length) {
+            // reclaim the holes if that frees enough room, otherwise grow
+            resize(size < (keys.length >> 1) ? keys.length : keys.length << 1);
+        }
+        keys[used] = key;
+        values[used] = value;
+        insert(key, used);
+        used++;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        int position = index[slot] - 1;
+        Object previous = values[position];
+        removeAt(slot, position);
+        return previous;
+    }
+
+    private void removeAt(int slot, int position) {
+        index[slot] = REMOVED;
+        keys[position] = null;
+        values[position] = null;
+        size--;
+        modCount++;
+        if (size == 0) {
+            clear();
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (used > 0) {
+            Arrays.fill(keys, 0, used, null);
+            Arrays.fill(values, 0, used, null);
+            Arrays.fill(index, 0);
+            used = 0;
+            size = 0;
+            modCount++;
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Set<Entry<String, Object>> es = entrySet;
+        if (es == null) {
+            es = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    InsertionOrderedMap.this.clear();
+                }
+            };
+            entrySet = es;
+        }
+        return es;
+    }
+
+    /**
+     * Iterates the live entries in insertion order.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        EntryIterator() {
+            skipRemoved();
+        }
+
+        private void skipRemoved() {
+            while (next < used && keys[next] == null) {
+                next++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < used;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= used) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            skipRemoved();
+            return new EntryView(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(slotOf(keys[last]), last);
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * An entry reading and writing through to the arrays of the map.
+     */
+    private final class EntryView implements Entry<String, Object> {
+        private final String key;
+        private final int position;
+
+        EntryView(int position) {
+            this.key = keys[position];
+            this.position = position;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return keys[position] == key ? values[position] : get(key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            if (keys[position] != key) {
+                return put(key, value);
+            }
+            Object previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            Object value = getValue();
+            return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
@@ -5,10 +5,14 @@ Public Domain.
  */
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -67,6 +71,24 @@ public class JSONArray implements Iterable<Object> {
      */
     private final ArrayList<Object> myArrayList;
 
+    /**
+     * The cached JSON text and its dependents, or null if this JSONArray was
+     * never written as part of a cached text. Set once, with
+     * {@link #SERIALIZED_FORM}.
+     */
+    private volatile SerializedForm serializedForm;
+
+    private static final VarHandle SERIALIZED_FORM;
+
+    static {
+        try {
+            SERIALIZED_FORM = MethodHandles.lookup()
+                    .findVarHandle(JSONArray.class, "serializedForm", SerializedForm.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * Construct an empty JSONArray.
      */
@@ -206,7 +228,92 @@ public class JSONArray implements Iterable<Object> {
 
     @Override
     public Iterator<Object> iterator() {
-        return myArrayList.iterator();
+        // the iterator drops the cached texts on removal even if this JSONArray
+        // is only written into a cached container after the iterator is made
+        Iterator<Object> elements = myArrayList.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return elements.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return elements.next();
+            }
+
+            @Override
+            public void remove() {
+                elements.remove();
+                changed();
+            }
+        };
+    }
+
+    /**
+     * Enable or disable the caching of the compact JSON text of this JSONArray.
+     * When enabled, the text is made on the first compact write, and later
+     * compact writes emit it with a single copy, the UTF-8 bytes for
+     * {@link #toUtf8Bytes()} and the stream and buffer writers, the chars for
+     * the other writers. This pays off for large, rarely changing documents that
+     * are written many times, for example as part of many responses.
+     * <p>
+     * The cached text is dropped when this JSONArray, or any JSONObject or
+     * JSONArray nested in it, is changed through its methods, including its key
+     * set and iterator views. Trees holding values which can change unnoticed,
+     * such as Maps, Collections, beans, JSONString implementations or a
+     * {@link ConcurrentJSONObject}, are never cached and are written as usual.
+     * Pretty-printed texts are never cached.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param caching true to cache the compact JSON text.
+     */
+    public void setCachingSerializedForm(boolean caching) {
+        if (caching) {
+            serializedForm().caching = true;
+        } else if (this.serializedForm != null) {
+            this.serializedForm.caching = false;
+            this.serializedForm.invalidate();
+        }
+    }
+
+    /**
+     * Determine if this JSONArray caches its compact JSON text.
+     *
+     * @return true if the compact JSON text is cached.
+     * @see #setCachingSerializedForm(boolean)
+     */
+    public boolean isCachingSerializedForm() {
+        return this.serializedForm != null && this.serializedForm.caching;
+    }
+
+    /**
+     * Get the serialized form of this JSONArray, creating it if needed.
+     */
+    SerializedForm serializedForm() {
+        SerializedForm form = this.serializedForm;
+        if (form == null) {
+            // threads writing the same tree, as a ParallelJSONWriter does, must
+            // all link to the same form, or a change would miss some of them
+            SerializedForm created = new SerializedForm();
+            form = (SerializedForm) SERIALIZED_FORM.compareAndExchange(this, null, created);
+            if (form == null) {
+                form = created;
+            }
+        }
+        return form;
+    }
+
+    /**
+     * Drops the cached JSON text of this JSONArray and the containers it was
+     * written into. Called by every method changing the JSONArray.
+     */
+    private void changed() {
+        if (this.serializedForm != null) {
+            this.serializedForm.invalidate();
+        }
     }
 
     /**
@@ -496,6 +603,7 @@ public class JSONArray implements Iterable<Object> {
      */
     public void clear() {
         myArrayList.clear();
+        changed();
     }
 
     /**
@@ -1075,6 +1183,7 @@ public class JSONArray implements Iterable<Object> {
     public JSONArray put(Object value) {
         JSONObject.testValidity(value);
         myArrayList.add(value);
+        changed();
         return this;
     }
 
@@ -1197,6 +1306,7 @@ public class JSONArray implements Iterable<Object> {
         if (index < length()) {
             JSONObject.testValidity(value);
             myArrayList.set(index, value);
+            changed();
             return this;
         }
         if (index == length()) {
@@ -1245,6 +1355,7 @@ public class JSONArray implements Iterable<Object> {
         // directly copy the elements from the source array to this one
         // as all wrapping should have been done already in the source.
         myArrayList.addAll(array.myArrayList);
+        changed();
         return this;
     }
 
@@ -1344,9 +1455,12 @@ public class JSONArray implements Iterable<Object> {
      * was no value.
      */
     public Object remove(int index) {
-        return index >= 0 && index < length()
-                ? myArrayList.remove(index)
-                : null;
+        if (index < 0 || index >= length()) {
+            return null;
+        }
+        Object removed = myArrayList.remove(index);
+        changed();
+        return removed;
     }
 
     /**
@@ -1397,6 +1511,36 @@ public class JSONArray implements Iterable<Object> {
         return true;
     }
 
+    /**
+     * Make a deep copy of this JSONArray. Nested JSONObjects and JSONArrays are
+     * copied, while all other values (Strings, Numbers, Booleans, NULL and any
+     * other value that was put directly) are shared with the original, as they
+     * are treated as immutable. The copy is made without recursion, so deeply
+     * nested documents can't overflow the stack.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return A new JSONArray with the same content as this one.
+     * @see JSONObject#deepCopy()
+     */
+    public JSONArray deepCopy() {
+        return (JSONArray) JSONObject.deepCopy(this);
+    }
+
+    /**
+     * Estimate the number of heap bytes retained by this JSONArray, including
+     * its list and all nested values, based on the object layout of the running
+     * JVM. This is meant for weight based eviction of cached documents, not as
+     * an exact measurement. The tree is walked without recursion.
+     *
+     * @return The estimated number of bytes retained by this JSONArray.
+     * @see JSONObject#retainedSizeEstimate()
+     */
+    public long retainedSizeEstimate() {
+        return RetainedSizeEstimator.estimate(this);
+    }
+
     /**
      * Produce a JSONObject by combining a JSONArray of names with the values of
      * this JSONArray.
@@ -1473,6 +1617,26 @@ public class JSONArray implements Iterable<Object> {
         return write(sw, indentFactor, 0).toString();
     }
 
+    /**
+     * Make a pretty-printed JSON text of this JSONArray, in the whitespace
+     * style of a {@link JSONPrettyPrinter}. Like {@link #toString(int)}, an
+     * array with only one element is output on a single line.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param printer The whitespace style.
+     * @return a printable, displayable, transmittable representation of the
+     * object, beginning with <code>[</code>&nbsp;<small>(left
+     * bracket)</small> and ending with <code>]</code>
+     * &nbsp;<small>(right bracket)</small>.
+     * @throws JSONException if a called function fails
+     */
+    public String toString(JSONPrettyPrinter printer) throws JSONException {
+        Writer sw = new StringBuilderWriter(Math.max(myArrayList.size() << 1, 16));
+        return write(sw, printer).toString();
+    }
+
     /**
      * Write the contents of the JSONArray as JSON text to a writer. For
      * compactness, no whitespace is added.
@@ -1488,6 +1652,105 @@ public class JSONArray implements Iterable<Object> {
         return write(writer, 0, 0);
     }
 
+    /**
+     * Make a compact JSON text of this JSONArray, encoded as UTF-8 bytes.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return The UTF-8 encoded JSON text.
+     * @throws JSONException If the JSONArray contains an invalid number.
+     * @see Utf8Writer
+     */
+    public byte[] toUtf8Bytes() throws JSONException {
+        Utf8Writer writer = new Utf8Writer(Math.max(length() * 2, 16));
+        write(writer, 0, 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Computes the exact length, in chars, of the compact JSON text of this
+     * JSONArray, as made by {@link #toString()}, without making the text.
+     * The length is computed on each call, it is not cached, as the JSONArray
+     * can change at any time.
+     * <p>
+     * Measuring takes about half the time of writing the text, so it only pays
+     * off when the length is needed anyway, or to write into a buffer allocated
+     * once with the exact size. A {@link Utf8Writer} sized with
+     * {@link #serializedUtf8Length()} never grows.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return the number of chars of the compact JSON text.
+     * @throws JSONException If the array contains an invalid number.
+     */
+    public long serializedLength() throws JSONException {
+        return JSONObject.serializedLength(this, false);
+    }
+
+    /**
+     * Computes the exact length, in bytes, of the compact JSON text of this
+     * JSONArray encoded as UTF-8, as made by {@link #toUtf8Bytes()}, without
+     * making the text. The length is computed on each call, it is not cached.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return the number of bytes of the UTF-8 encoded compact JSON text.
+     * @throws JSONException If the array contains an invalid number.
+     * @see #serializedLength()
+     */
+    public long serializedUtf8Length() throws JSONException {
+        return JSONObject.serializedLength(this, true);
+    }
+
+    /**
+     * Write the contents of the JSONArray as compact JSON text to a stream, encoded
+     * as UTF-8. The stream is flushed, but not closed.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param out the stream receiving the UTF-8 encoded JSON text
+     * @return The stream.
+     * @throws JSONException if a called function has an error or a write error
+     *                       occurs
+     */
+    public OutputStream write(OutputStream out) throws JSONException {
+        Utf8Writer writer = new Utf8Writer(out);
+        write(writer, 0, 0);
+        try {
+            writer.flush();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return out;
+    }
+
+    /**
+     * Write the contents of the JSONArray as compact JSON text into a ByteBuffer,
+     * encoded as UTF-8, starting at its current position.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param buffer the buffer receiving the UTF-8 encoded JSON text
+     * @return The buffer, positioned after the JSON text.
+     * @throws JSONException if a called function has an error or if the buffer
+     *                       has no room left
+     */
+    public ByteBuffer write(ByteBuffer buffer) throws JSONException {
+        Utf8Writer writer = new Utf8Writer(buffer);
+        write(writer, 0, 0);
+        try {
+            writer.flush();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return buffer;
+    }
+
     /**
      * Write the contents of the JSONArray as JSON text to a writer.
      *
@@ -1515,7 +1778,43 @@ public class JSONArray implements Iterable<Object> {
      */
     public Writer write(Writer writer, int indentFactor, int indent)
             throws JSONException {
+        return write(writer, JSONPrettyPrinter.of(indentFactor, indent), indent);
+    }
+
+    /**
+     * Write the contents of the JSONArray as JSON text to a writer, in the
+     * whitespace style of a {@link JSONPrettyPrinter}. Like
+     * {@link #write(Writer, int, int)}, an array with only one element is output
+     * on a single line.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param writer  Writes the serialized JSON
+     * @param printer The whitespace style.
+     * @return The writer.
+     * @throws JSONException if a called function fails or unable to write
+     */
+    public Writer write(Writer writer, JSONPrettyPrinter printer) throws JSONException {
+        return write(writer, printer, 0);
+    }
+
+    /**
+     * Write the contents of the JSONArray as JSON text to a writer.
+     *
+     * @param writer  Writes the serialized JSON
+     * @param printer The whitespace style, or null for compact text.
+     * @param indent  The indentation of the top level, in indentation characters.
+     * @return The writer.
+     * @throws JSONException if a called function fails or unable to write
+     */
+    Writer write(Writer writer, JSONPrettyPrinter printer, int indent)
+            throws JSONException {
         try {
+            if (printer == null && this.serializedForm != null && this.serializedForm.caching
+                    && this.serializedForm.write(this, writer)) {
+                return writer;
+            }
             boolean needsComma = false;
             int length = length();
             writer.write('[');
@@ -1523,33 +1822,31 @@ public class JSONArray implements Iterable<Object> {
             if (length == 1) {
                 try {
                     JSONObject.writeValue(writer, myArrayList.get(0),
-                            indentFactor, indent);
+                            printer, indent);
                 } catch (Exception e) {
                     throw new JSONException("Unable to write JSONArray value at index: 0", e);
                 }
             } else if (length != 0) {
-                final int newIndent = indent + indentFactor;
+                final int newIndent = printer != null ? indent + printer.getIndentWidth() : 0;
 
                 for (int i = 0; i < length; i += 1) {
                     if (needsComma) {
                         writer.write(',');
                     }
-                    if (indentFactor > 0) {
-                        writer.write('\n');
+                    if (printer != null) {
+                        printer.newline(writer, newIndent);
                     }
-                    JSONObject.indent(writer, newIndent);
                     try {
                         JSONObject.writeValue(writer, myArrayList.get(i),
-                                indentFactor, newIndent);
+                                printer, newIndent);
                     } catch (Exception e) {
                         throw new JSONException("Unable to write JSONArray value at index: " + i, e);
                     }
                     needsComma = true;
                 }
-                if (indentFactor > 0) {
-                    writer.write('\n');
+                if (printer != null) {
+                    printer.newline(writer, indent);
                 }
-                JSONObject.indent(writer, indent);
             }
             writer.write(']');
             return writer;
@@ -1656,23 +1953,25 @@ public class JSONArray implements Iterable<Object> {
      * @throws NullPointerException Thrown if the array parameter is null.
      */
     private void addAll(Object array, boolean wrap) throws JSONException {
-        if (array.getClass().isArray()) {
-            int length = Array.getLength(array);
-            myArrayList.ensureCapacity(myArrayList.size() + length);
+        if (array instanceof Object[] objects) {
+            myArrayList.ensureCapacity(myArrayList.size() + objects.length);
             if (wrap) {
-                for (int i = 0; i < length; i += 1) {
-                    put(JSONObject.wrap(Array.get(array, i)));
+                for (Object o : objects) {
+                    put(JSONObject.wrap(o));
                 }
             } else {
-                for (int i = 0; i < length; i += 1) {
-                    put(Array.get(array, i));
+                for (Object o : objects) {
+                    put(o);
                 }
             }
+        } else if (array.getClass().isArray()) {
+            addPrimitives(array);
         } else if (array instanceof JSONArray) {
             // use the built in array list `addAll` as all object
             // wrapping should have been completed in the original
             // JSONArray
             myArrayList.addAll(((JSONArray) array).myArrayList);
+            changed();
         } else if (array instanceof Collection) {
             addAll((Collection<?>) array, wrap);
         } else if (array instanceof Iterable) {
@@ -1683,6 +1982,62 @@ public class JSONArray implements Iterable<Object> {
         }
     }
 
+    /**
+     * Add the elements of an array of primitives to the JSONArray, with a loop
+     * for each component type rather than through reflection. The elements are
+     * boxed as {@link Array#get(Object, int)} would box them, and need no
+     * wrapping.
+     *
+     * @param array An array of primitives.
+     * @throws JSONException If a float or double element is a non-finite number.
+     */
+    private void addPrimitives(Object array) throws JSONException {
+        myArrayList.ensureCapacity(myArrayList.size() + Array.getLength(array));
+        try {
+            if (array instanceof int[] values) {
+                for (int value : values) {
+                    myArrayList.add(value);
+                }
+            } else if (array instanceof long[] values) {
+                for (long value : values) {
+                    myArrayList.add(value);
+                }
+            } else if (array instanceof double[] values) {
+                for (double value : values) {
+                    if (!Double.isFinite(value)) {
+                        throw new JSONException("JSON does not allow non-finite numbers.");
+                    }
+                    myArrayList.add(value);
+                }
+            } else if (array instanceof float[] values) {
+                for (float value : values) {
+                    if (!Float.isFinite(value)) {
+                        throw new JSONException("JSON does not allow non-finite numbers.");
+                    }
+                    myArrayList.add(value);
+                }
+            } else if (array instanceof boolean[] values) {
+                for (boolean value : values) {
+                    myArrayList.add(value);
+                }
+            } else if (array instanceof byte[] values) {
+                for (byte value : values) {
+                    myArrayList.add(value);
+                }
+            } else if (array instanceof short[] values) {
+                for (short value : values) {
+                    myArrayList.add(value);
+                }
+            } else {
+                for (char value : (char[]) array) {
+                    myArrayList.add(value);
+                }
+            }
+        } finally {
+            changed();
+        }
+    }
+
     /**
      * Create a new JSONException in a common format for incorrect conversions.
      *
@@ -0,0 +1,29 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Use this annotation on a public bean class or record to have the
+ * <code>json-processor</code> annotation processor generate a
+ * {@link JSONCodec} for it at compile time. The codec reads and writes the
+ * same keys as the reflection based conversions, following the
+ * {@link JSONPropertyName} and {@link JSONPropertyIgnore} annotations, but
+ * with plain method calls: no reflection and no warm-up.
+ * <p>
+ * Without the annotation processor on the compiler's processor path, the
+ * annotation has no effect.
+ */
+@Documented
+@Retention(CLASS)
+@Target({TYPE})
+public @interface JSONBean {
+}
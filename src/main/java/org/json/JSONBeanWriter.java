@@ -0,0 +1,270 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the compact JSON text of beans, records, Maps, Collections and arrays
+ * directly, without building the JSONObjects and JSONArrays that
+ * <code>new JSONObject(bean).toString()</code> or
+ * <code>JSONObject.wrap(value).toString()</code> would build first. Values are
+ * converted the same way: the getters and record components are found and
+ * called as {@link JSONObject#JSONObject(Object)} does, through the accessors
+ * cached for each class, and other values are written like
+ * {@link JSONObject#wrap(Object)} converts them.
+ * <p>
+ * The text differs from the text of the JSONObjects in a few ways:
+ * <ul>
+ * <li>The properties of a bean are written in the order of its record
+ * components and getters, rather than in the order of a HashMap. Beans with
+ * several getters for the same key are converted to a JSONObject first, so the
+ * same getter wins.</li>
+ * <li>A bean, Map, Collection or array holding itself, directly or through
+ * other values, is rejected, rather than overflowing the stack.</li>
+ * </ul>
+ * As with {@link JSONObject#JSONObject(Object)}, a property whose getter
+ * throws an exception is left out, and values which are {@link java.io.Closeable}
+ * are closed once they are written. As with {@link JSONObject#JSONObject(Map)},
+ * a Map with a null key is rejected with a NullPointerException, and keys with
+ * the same String value make a single member. Beans with a {@link JSONCodec}
+ * are written by their codec.
+ */
+public final class JSONBeanWriter {
+    private JSONBeanWriter() {
+    }
+
+    /**
+     * Make the compact JSON text of a value.
+     *
+     * @param value A bean, record, Map, Collection, array, or any value
+     *              JSONObject can hold.
+     * @return the JSON text.
+     * @throws JSONException If the value holds a non-finite number or itself.
+     */
+    public static String toString(Object value) throws JSONException {
+        return write(value, new StringBuilderWriter()).toString();
+    }
+
+    /**
+     * Make the compact JSON text of a value, encoded as UTF-8 bytes.
+     *
+     * @param value A bean, record, Map, Collection, array, or any value
+     *              JSONObject can hold.
+     * @return the UTF-8 encoded JSON text.
+     * @throws JSONException If the value holds a non-finite number or itself.
+     */
+    public static byte[] toUtf8Bytes(Object value) throws JSONException {
+        Utf8Writer writer = new Utf8Writer();
+        write(value, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Write the compact JSON text of a value to a stream, encoded as UTF-8.
+     * The stream is flushed, but not closed.
+     *
+     * @param value A bean, record, Map, Collection, array, or any value
+     *              JSONObject can hold.
+     * @param out   the stream receiving the UTF-8 encoded JSON text
+     * @return The stream.
+     * @throws JSONException If the value holds a non-finite number or itself,
+     *                       or if the stream fails.
+     */
+    public static OutputStream write(Object value, OutputStream out) throws JSONException {
+        Utf8Writer writer = new Utf8Writer(out);
+        write(value, writer);
+        try {
+            writer.flush();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return out;
+    }
+
+    /**
+     * Write the compact JSON text of a value.
+     *
+     * @param value  A bean, record, Map, Collection, array, or any value
+     *               JSONObject can hold.
+     * @param writer the writer receiving the JSON text
+     * @return The writer.
+     * @throws JSONException If the value holds a non-finite number or itself,
+     *                       or if the writer fails.
+     */
+    public static Writer write(Object value, Writer writer) throws JSONException {
+        try {
+            writeValue(writer, value, new CycleTracker());
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return writer;
+    }
+
+    /**
+     * Writes a value, converted like {@link JSONObject#wrap(Object)} does.
+     *
+     * @param ancestors the beans, Maps, Collections and arrays being written
+     */
+    private static void writeValue(Writer writer, Object value, CycleTracker ancestors)
+            throws JSONException, IOException {
+        if (JSONObject.NULL.equals(value)) {
+            // wrap turns null into NULL, written as the JSONObjects write it
+            JSONObject.writeValue(writer, JSONObject.NULL, null, 0);
+            return;
+        }
+        ValueKind kind = ValueKind.ofWrapped(value);
+        switch (kind) {
+            case COLLECTION:
+            case MAP:
+            case ARRAY:
+                if (!ancestors.enter(value)) {
+                    throw new JSONException("Value contains itself.");
+                }
+                if (kind == ValueKind.COLLECTION) {
+                    writeCollection(writer, (Collection<?>) value, ancestors);
+                } else if (kind == ValueKind.MAP) {
+                    writeMap(writer, (Map<?, ?>) value, ancestors);
+                } else {
+                    writeArray(writer, value, ancestors);
+                }
+                ancestors.exit(value);
+                break;
+            case STRINGIFIED:
+                JSONObject.quote(value.toString(), writer);
+                break;
+            case CODEC:
+            case BEAN:
+                writeBean(writer, value, ancestors);
+                break;
+            default:
+                JSONObject.testValidity(value);
+                JSONObject.writeValue(writer, value, null, 0);
+                break;
+        }
+    }
+
+    private static void writeCollection(Writer writer, Collection<?> coll, CycleTracker ancestors)
+            throws JSONException, IOException {
+        boolean needsComma = false;
+        writer.write('[');
+        for (Object element : coll) {
+            if (needsComma) {
+                writer.write(',');
+            }
+            writeValue(writer, element, ancestors);
+            needsComma = true;
+        }
+        writer.write(']');
+    }
+
+    private static void writeArray(Writer writer, Object array, CycleTracker ancestors)
+            throws JSONException, IOException {
+        if (!(array instanceof Object[] objects)) {
+            // the elements of an array of primitives can't hold anything, and
+            // the typed loops of JSONArray read them faster than reflection
+            JSONObject.writeValue(writer, new JSONArray(array), null, 0);
+            return;
+        }
+        writer.write('[');
+        for (int i = 0; i < objects.length; i += 1) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeValue(writer, objects[i], ancestors);
+        }
+        writer.write(']');
+    }
+
+    private static void writeMap(Writer writer, Map<?, ?> map, CycleTracker ancestors)
+            throws JSONException, IOException {
+        if (!JSONObject.hasStringKeys(map)) {
+            // keys with the same String value make a single member, as in a JSONObject
+            JSONObject.writeValue(writer, JSONObject.wrapEntries(map, ancestors), null, 0);
+            return;
+        }
+        boolean needsComma = false;
+        writer.write('{');
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            if (needsComma) {
+                writer.write(',');
+            }
+            QuotedKeyCache.writeKey(writer, String.valueOf(entry.getKey()));
+            writeValue(writer, value, ancestors);
+            needsComma = true;
+        }
+        writer.write('}');
+    }
+
+    private static void writeBean(Writer writer, Object bean, CycleTracker ancestors)
+            throws JSONException, IOException {
+        JSONCodec<Object> codec = CodecRegistry.forClass(bean.getClass());
+        BeanDescriptor descriptor = codec == null ? BeanDescriptor.of(bean.getClass()) : null;
+        if (descriptor != null && descriptor.hasDuplicateKeys()) {
+            JSONObject.writeValue(writer, new JSONObject(bean), null, 0);
+            return;
+        }
+        if (!ancestors.enter(bean)) {
+            throw new JSONException("Value contains itself.");
+        }
+        if (codec != null) {
+            codec.write(bean, writer, new JSONCodec.Context(ancestors));
+            ancestors.exit(bean);
+            return;
+        }
+        boolean needsComma = false;
+        writer.write('{');
+        for (BeanDescriptor.Property property : descriptor.properties()) {
+            Object result;
+            try {
+                result = property.get(bean);
+            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ignore) {
+                continue;
+            }
+            if (result == null) {
+                continue;
+            }
+            if (ancestors.contains(result)) {
+                throw JSONObject.recursivelyDefinedObjectException(property.key);
+            }
+            JSONObject.testValidity(result);
+            if (needsComma) {
+                writer.write(',');
+            }
+            QuotedKeyCache.writeKey(writer, property.key);
+            writeValue(writer, result, ancestors);
+            needsComma = true;
+            JSONObject.closeClosable(result);
+        }
+        writer.write('}');
+        ancestors.exit(bean);
+    }
+
+    /**
+     * Writes the value of a property written by a {@link JSONCodec}, after its
+     * key.
+     *
+     * @param key       the key of the property
+     * @param value     the value of the property, not null
+     * @param ancestors the beans, Maps, Collections and arrays being written
+     */
+    static void writeProperty(Writer writer, String key, Object value, CycleTracker ancestors)
+            throws JSONException, IOException {
+        if (ancestors.contains(value)) {
+            throw JSONObject.recursivelyDefinedObjectException(key);
+        }
+        JSONObject.testValidity(value);
+        writeValue(writer, value, ancestors);
+    }
+}
@@ -0,0 +1,364 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the canonical JSON text of a value, as defined by the JSON
+ * Canonicalization Scheme (JCS, RFC 8785), so that equal documents always
+ * produce the same bytes, for example to sign or hash them.
+ * <ul>
+ * <li>The keys of each object are written in the order of their UTF-16 code
+ * units, as sorted by {@link String#compareTo(String)}. Only the keys are
+ * sorted, the values are looked up as they are written.</li>
+ * <li>Numbers are written as the IEEE 754 double they convert to, in the
+ * shortest form defined by ECMAScript's <code>Number.prototype.toString</code>.
+ * Integers beyond 2<sup>53</sup> lose precision, as in JavaScript.</li>
+ * <li>Strings only escape the quote, the backslash and the control
+ * characters. Strings holding an unpaired surrogate are rejected.</li>
+ * <li>No whitespace is written.</li>
+ * </ul>
+ * Maps, Collections and arrays are converted like {@link JSONObject#wrap(Object)}
+ * does, and the text of {@link JSONString} values is parsed and canonicalized.
+ * <p>
+ * {@link #digest(Object, MessageDigest)} hashes the UTF-8 encoded text as it is
+ * written, without making the whole text.
+ * <p><b>
+ * Warning: This class assumes that the data structure is acyclical.
+ * </b>
+ */
+public final class JSONCanonicalizer {
+    /**
+     * Double.toString produces the shortest decimal from Java 19 on. Before,
+     * its results with 16 or 17 digits, or for subnormal doubles, may be one
+     * digit too long.
+     */
+    private static final boolean SHORTEST_DOUBLE_TO_STRING = Runtime.version().feature() >= 19;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private JSONCanonicalizer() {
+    }
+
+    /**
+     * Make the canonical JSON text of a value.
+     *
+     * @param value A JSONObject, JSONArray, or any other value JSONObject can hold.
+     * @return the canonical JSON text.
+     * @throws JSONException If the value holds a non-finite number or a string
+     *                       with an unpaired surrogate.
+     */
+    public static String toString(Object value) throws JSONException {
+        return write(value, new StringBuilderWriter()).toString();
+    }
+
+    /**
+     * Make the canonical JSON text of a value, encoded as UTF-8 bytes.
+     *
+     * @param value A JSONObject, JSONArray, or any other value JSONObject can hold.
+     * @return the UTF-8 encoded canonical JSON text.
+     * @throws JSONException If the value holds a non-finite number or a string
+     *                       with an unpaired surrogate.
+     */
+    public static byte[] toUtf8Bytes(Object value) throws JSONException {
+        Utf8Writer writer = new Utf8Writer();
+        write(value, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Write the canonical JSON text of a value to a stream, encoded as UTF-8.
+     * The stream is flushed, but not closed.
+     *
+     * @param value A JSONObject, JSONArray, or any other value JSONObject can hold.
+     * @param out   the stream receiving the UTF-8 encoded JSON text
+     * @return The stream.
+     * @throws JSONException If the value holds a non-finite number or a string
+     *                       with an unpaired surrogate, or if the stream fails.
+     */
+    public static OutputStream write(Object value, OutputStream out) throws JSONException {
+        Utf8Writer writer = new Utf8Writer(out);
+        write(value, writer);
+        try {
+            writer.flush();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return out;
+    }
+
+    /**
+     * Compute the digest of the UTF-8 encoded canonical JSON text of a value.
+     * The text is passed to the digest in chunks as it is written, so it is
+     * never held in memory as a whole.
+     *
+     * @param value  A JSONObject, JSONArray, or any other value JSONObject can hold.
+     * @param digest the digest to update, for example
+     *               <code>MessageDigest.getInstance("SHA-256")</code>
+     * @return the digest of the canonical JSON text. The digest is reset.
+     * @throws JSONException If the value holds a non-finite number or a string
+     *                       with an unpaired surrogate.
+     */
+    public static byte[] digest(Object value, MessageDigest digest) throws JSONException {
+        write(value, new OutputStream() {
+            @Override
+            public void write(int b) {
+                digest.update((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                digest.update(b, off, len);
+            }
+        });
+        return digest.digest();
+    }
+
+    /**
+     * Write the canonical JSON text of a value.
+     *
+     * @param value  A JSONObject, JSONArray, or any other value JSONObject can hold.
+     * @param writer the writer receiving the JSON text
+     * @return The writer.
+     * @throws JSONException If the value holds a non-finite number or a string
+     *                       with an unpaired surrogate, or if the writer fails.
+     */
+    public static Writer write(Object value, Writer writer) throws JSONException {
+        try {
+            writeValue(writer, value);
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return writer;
+    }
+
+    private static void writeValue(Writer writer, Object value) throws JSONException, IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            writer.write("null");
+        } else if (value instanceof JSONString) {
+            // JSONString must be checked first, like JSONObject.writeValue does
+            Object o;
+            try {
+                o = ((JSONString) value).toJSONString();
+            } catch (Exception e) {
+                throw new JSONException(e);
+            }
+            if (o == null) {
+                writeString(writer, value.toString());
+            } else {
+                writeValue(writer, new JSONTokener(o.toString()).nextValue());
+            }
+        } else if (value instanceof String) {
+            writeString(writer, (String) value);
+        } else if (value instanceof JSONObject) {
+            writeObject(writer, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeArray(writer, (JSONArray) value);
+        } else if (value instanceof Number) {
+            writer.write(numberToString(((Number) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            writer.write(value.toString());
+        } else if (value instanceof Enum<?>) {
+            writeString(writer, ((Enum<?>) value).name());
+        } else if (value instanceof Map<?, ?> || value instanceof Collection<?>
+                || value.getClass().isArray()) {
+            writeValue(writer, JSONObject.wrap(value));
+        } else {
+            writeString(writer, value.toString());
+        }
+    }
+
+    private static void writeObject(Writer writer, JSONObject jo) throws JSONException, IOException {
+        String[] keys = jo.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        writer.write('{');
+        for (int i = 0; i < keys.length; i += 1) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeString(writer, keys[i]);
+            writer.write(':');
+            try {
+                writeValue(writer, jo.opt(keys[i]));
+            } catch (JSONException e) {
+                throw new JSONException("Unable to write JSONObject value for key: " + keys[i], e);
+            }
+        }
+        writer.write('}');
+    }
+
+    private static void writeArray(Writer writer, JSONArray ja) throws JSONException, IOException {
+        writer.write('[');
+        for (int i = 0, length = ja.length(); i < length; i += 1) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            try {
+                writeValue(writer, ja.opt(i));
+            } catch (JSONException e) {
+                throw new JSONException("Unable to write JSONArray value at index: " + i, e);
+            }
+        }
+        writer.write(']');
+    }
+
+    /**
+     * Writes a string the way ECMAScript's JSON.stringify does, copying the
+     * runs of characters between escapes with a single write each.
+     */
+    private static void writeString(Writer writer, String string) throws JSONException, IOException {
+        writer.write('"');
+        int length = string.length();
+        int start = 0;
+        for (int i = 0; i < length; i += 1) {
+            char c = string.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\') {
+                if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(string.charAt(i + 1))) {
+                        i += 1;
+                    } else {
+                        throw new JSONException("Unpaired surrogate at index " + i + " of a string.");
+                    }
+                }
+                continue;
+            }
+            if (i > start) {
+                writer.write(string, start, i - start);
+            }
+            start = i + 1;
+            writer.write('\\');
+            switch (c) {
+                case '"':
+                case '\\':
+                    writer.write(c);
+                    break;
+                case '\b':
+                    writer.write('b');
+                    break;
+                case '\t':
+                    writer.write('t');
+                    break;
+                case '\n':
+                    writer.write('n');
+                    break;
+                case '\f':
+                    writer.write('f');
+                    break;
+                case '\r':
+                    writer.write('r');
+                    break;
+                default:
+                    writer.write("u00");
+                    writer.write(HEX_DIGITS[c >>> 4]);
+                    writer.write(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        if (start < length) {
+            writer.write(string, start, length - start);
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Produce the text of a double the way ECMAScript's
+     * <code>Number.prototype.toString</code> does: the shortest digits that
+     * convert back to the same double, as an integer or a decimal fraction when
+     * the decimal exponent is between -7 and 21, in scientific notation
+     * otherwise.
+     *
+     * @param d A double.
+     * @return the canonical text of the double.
+     * @throws JSONException If d is not finite.
+     */
+    static String numberToString(double d) throws JSONException {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+        if (d == 0) {
+            // also for -0
+            return "0";
+        }
+        double abs = Math.abs(d);
+
+        // the significant digits, and the position n of the decimal point
+        // relative to them: abs = 0.digits * 10^n
+        String digits;
+        int n;
+        String s = Double.toString(abs);
+        int e = s.indexOf('E');
+        String mantissa = e < 0 ? s : s.substring(0, e);
+        int dot = mantissa.indexOf('.');
+        digits = mantissa.substring(0, dot) + mantissa.substring(dot + 1);
+        n = dot + (e < 0 ? 0 : Integer.parseInt(s.substring(e + 1)));
+        int first = 0;
+        while (digits.charAt(first) == '0') {
+            first += 1;
+        }
+        int last = digits.length();
+        while (digits.charAt(last - 1) == '0') {
+            last -= 1;
+        }
+        digits = digits.substring(first, last);
+        n -= first;
+
+        if (!SHORTEST_DOUBLE_TO_STRING && (digits.length() >= 16 || abs < Double.MIN_NORMAL)) {
+            // a decimal of up to 15 digits is the only one of its length
+            // converting to a normal double, longer ones and the less precise
+            // subnormal doubles need to be checked
+            BigDecimal exact = new BigDecimal(abs);
+            BigDecimal shortest = null;
+            for (int p = digits.length(); p > 0; p -= 1) {
+                BigDecimal rounded = exact.round(new MathContext(p, RoundingMode.HALF_EVEN));
+                if (rounded.doubleValue() != abs) {
+                    break;
+                }
+                shortest = rounded;
+            }
+            if (shortest != null) {
+                shortest = shortest.stripTrailingZeros();
+                digits = shortest.unscaledValue().toString();
+                n = digits.length() - shortest.scale();
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(digits.length() + 8);
+        if (d < 0) {
+            sb.append('-');
+        }
+        int k = digits.length();
+        if (k <= n && n <= 21) {
+            sb.append(digits);
+            for (int i = k; i < n; i += 1) {
+                sb.append('0');
+            }
+        } else if (0 < n && n <= 21) {
+            sb.append(digits, 0, n).append('.').append(digits, n, k);
+        } else if (-6 < n && n <= 0) {
+            sb.append("0.");
+            for (int i = n; i < 0; i += 1) {
+                sb.append('0');
+            }
+            sb.append(digits);
+        } else {
+            sb.append(digits.charAt(0));
+            if (k > 1) {
+                sb.append('.').append(digits, 1, k);
+            }
+            sb.append('e').append(n - 1 >= 0 ? '+' : '-').append(Math.abs(n - 1));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Converts the values of one class to and from JSON without reflection. Codecs
+ * are usually generated by the <code>json-processor</code> annotation
+ * processor for the classes annotated with {@link JSONBean}, and are found with
+ * {@link java.util.ServiceLoader}, from the
+ * <code>META-INF/services/org.json.JSONCodec</code> files listing them.
+ * <p>
+ * When a class has a codec, {@link JSONObject#wrap(Object)} and
+ * {@link JSONObject#JSONObject(Object)} use {@link #toJSONObject(Object)}
+ * rather than its getters, JSONObjects, JSONArrays and {@link JSONBeanWriter}
+ * write its values with {@link #write(Object, Writer)}, and
+ * {@link JSONObject#toBean(Class)} and {@link JSONTokener#nextValue(Class)} bind
+ * to it with {@link #fromJSONObject(JSONObject)} and {@link #read(JSONTokener)}.
+ * <p>
+ * While a value is converted as a property, element or entry of another one,
+ * the library calls the methods taking a {@link Context}, which knows the
+ * values being converted. A codec converts the properties of a value through
+ * the context, so a value holding itself is rejected as it is for the beans
+ * converted by reflection, rather than overflowing the stack.
+ * <p>
+ * The generated codecs convert the properties like
+ * {@link JSONObject#JSONObject(Object)} does: a property whose getter throws an
+ * exception is left out, rather than failing the conversion.
+ *
+ * @param <T> the class converted by the codec
+ */
+public interface JSONCodec<T> {
+    /**
+     * Get the class converted by this codec. Only values of exactly this
+     * class are converted, not those of its subclasses.
+     *
+     * @return the class
+     */
+    Class<T> type();
+
+    /**
+     * Make a JSONObject of the properties of a value, like
+     * {@link JSONObject#JSONObject(Object)} does.
+     *
+     * @param value the value, not null
+     * @return a new JSONObject
+     * @throws JSONException If a property is a non-finite number.
+     */
+    JSONObject toJSONObject(T value) throws JSONException;
+
+    /**
+     * Make a JSONObject of the properties of a value, converting them through
+     * a context. By default, the context is ignored and
+     * {@link #toJSONObject(Object)} is called.
+     *
+     * @param value   the value, not null, already entered in the context
+     * @param context the values being converted
+     * @return a new JSONObject
+     * @throws JSONException If a property is a non-finite number, or holds a
+     *                       value being converted.
+     */
+    default JSONObject toJSONObject(T value, Context context) throws JSONException {
+        return toJSONObject(value);
+    }
+
+    /**
+     * Write the compact JSON text of a value, as the JSONObject made by
+     * {@link #toJSONObject(Object)} would write it, in any key order.
+     *
+     * @param value  the value, not null
+     * @param writer the writer receiving the JSON text
+     * @throws JSONException If a property is a non-finite number.
+     * @throws IOException   If the writer fails.
+     */
+    void write(T value, Writer writer) throws JSONException, IOException;
+
+    /**
+     * Write the compact JSON text of a value, writing its properties through
+     * a context. By default, the context is ignored and
+     * {@link #write(Object, Writer)} is called.
+     *
+     * @param value   the value, not null, already entered in the context
+     * @param writer  the writer receiving the JSON text
+     * @param context the values being written
+     * @throws JSONException If a property is a non-finite number, or holds a
+     *                       value being written.
+     * @throws IOException   If the writer fails.
+     */
+    default void write(T value, Writer writer, Context context) throws JSONException, IOException {
+        write(value, writer);
+    }
+
+    /**
+     * Create a value from the entries of a JSONObject, like
+     * {@link JSONObject#toBean(Class)} does.
+     *
+     * @param jo the JSONObject
+     * @return the value
+     * @throws JSONException If an entry can't be bound to its property.
+     */
+    T fromJSONObject(JSONObject jo) throws JSONException;
+
+    /**
+     * Read a value from the JSON object text that follows in a tokener. By
+     * default, the JSONObject is parsed and passed to
+     * {@link #fromJSONObject(JSONObject)}.
+     *
+     * @param x the tokener, positioned before a <code>{</code>
+     * @return the value
+     * @throws JSONException If syntax error, or if an entry can't be bound to
+     *                       its property.
+     */
+    default T read(JSONTokener x) throws JSONException {
+        return fromJSONObject(new JSONObject(x));
+    }
+
+    /**
+     * Bind a value held by a JSONObject or a JSONArray to a class, the way
+     * {@link JSONObject#toBean(Class)} binds the values of properties. Meant
+     * for generated codecs, which bind the elements of generic Collections,
+     * Maps and arrays themselves.
+     *
+     * @param <V>   the class to bind to
+     * @param value the value, possibly null or {@link JSONObject#NULL}
+     * @param type  the class to bind to
+     * @return the bound value, null for null or {@link JSONObject#NULL}
+     * @throws JSONException If the value can't be bound to the class.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> V bind(Object value, Class<V> type) throws JSONException {
+        if (value == null) {
+            return null;
+        }
+        return (V) ValueBinder.of(type).bind(value);
+    }
+
+    /**
+     * The values being converted while a codec converts a value: the beans,
+     * Maps, Collections and arrays it is nested in, and the value itself.
+     * Codecs convert the values of their properties with
+     * {@link #put(JSONObject, String, Object)} and
+     * {@link #write(String, Object, Writer)}, which reject a value being
+     * converted already.
+     */
+    final class Context {
+        final CycleTracker tracker;
+
+        Context(CycleTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        /**
+         * Make the context of a value converted on its own, rather than as a
+         * property, element or entry of another one.
+         *
+         * @param value the value, not null
+         * @return a context holding only the value
+         */
+        public static Context of(Object value) {
+            CycleTracker tracker = new CycleTracker();
+            tracker.enter(value);
+            return new Context(tracker);
+        }
+
+        /**
+         * Put the value of a property into a JSONObject, wrapped like
+         * {@link JSONObject#JSONObject(Object)} wraps the values of getters.
+         * A null value is left out.
+         *
+         * @param jo    the JSONObject
+         * @param key   the key of the property
+         * @param value the value of the property, or null
+         * @throws JSONException If the value is a non-finite number, or holds
+         *                       a value being converted.
+         */
+        public void put(JSONObject jo, String key, Object value) throws JSONException {
+            if (value != null) {
+                jo.put(key, JSONObject.wrapProperty(key, value, this.tracker));
+            }
+        }
+
+        /**
+         * Write the value of a property, like {@link JSONBeanWriter} writes
+         * the values of getters. The key is written by the codec first.
+         *
+         * @param key    the key of the property, for the error message
+         * @param value  the value of the property, not null
+         * @param writer the writer receiving the JSON text
+         * @throws JSONException If the value is a non-finite number, or holds
+         *                       a value being written.
+         * @throws IOException   If the writer fails.
+         */
+        public void write(String key, Object value, Writer writer) throws JSONException, IOException {
+            JSONBeanWriter.writeProperty(writer, key, value, this.tracker);
+        }
+    }
+}
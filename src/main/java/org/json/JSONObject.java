@@ -6,17 +6,18 @@ Public Domain.
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 
 /**
  * A JSONObject is an unordered collection of name/value pairs. Its external
@@ -67,6 +68,12 @@ import java.util.regex.Pattern;
  * if they are not the reserved words <code>true</code>, <code>false</code>,
  * or <code>null</code>.</li>
  * </ul>
+ * <p>
+ * By default the order of the names is unspecified. An ordered JSONObject,
+ * created with {@link #JSONObject(boolean)} or parsed by a
+ * {@link JSONTokener} with {@link JSONTokener#setOrdered(boolean) ordering}
+ * enabled, keeps its names in insertion order, which is then also the order
+ * of <code>keySet()</code>, <code>toMap()</code> and the JSON text written.
  *
  * @author JSON.org
  * @version 2016-08-15
@@ -126,15 +133,108 @@ public class JSONObject {
     }
 
     /**
-     * Regular Expression Pattern that matches JSON Numbers. This is primarily used for
-     * output to guarantee that we are always writing valid JSON.
+     * The map where the JSONObject's properties are kept.
      */
-    static final Pattern NUMBER_PATTERN = Pattern.compile("-?(?:0|[1-9]\\d*)(?:\\.\\d+)?(?:[eE][+-]?\\d+)?");
+    private final Map<String, Object> map;
 
     /**
-     * The map where the JSONObject's properties are kept.
+     * The cached JSON text and its dependents, or null if this JSONObject was
+     * never written as part of a cached text. Set once, with
+     * {@link #SERIALIZED_FORM}.
      */
-    private final Map<String, Object> map;
+    private volatile SerializedForm serializedForm;
+
+    /**
+     * The key set and entry set views, made on first use.
+     */
+    private Set<String> keySet;
+    private Set<Entry<String, Object>> entrySet;
+
+    private static final VarHandle SERIALIZED_FORM;
+
+    static {
+        try {
+            SERIALIZED_FORM = MethodHandles.lookup()
+                    .findVarHandle(JSONObject.class, "serializedForm", SerializedForm.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Determine if this JSONObject keeps its names in insertion order.
+     *
+     * @return true if the names are kept in insertion order.
+     */
+    public boolean isOrdered() {
+        return map instanceof InsertionOrderedMap;
+    }
+
+    /**
+     * Enable or disable the caching of the compact JSON text of this JSONObject.
+     * When enabled, the text is made on the first compact write, and later
+     * compact writes emit it with a single copy, the UTF-8 bytes for
+     * {@link #toUtf8Bytes()} and the stream and buffer writers, the chars for
+     * the other writers. This pays off for large, rarely changing documents that
+     * are written many times, for example as part of many responses.
+     * <p>
+     * The cached text is dropped when this JSONObject, or any JSONObject or
+     * JSONArray nested in it, is changed through its methods, including its key
+     * set and iterator views. Trees holding values which can change unnoticed,
+     * such as Maps, Collections, beans, JSONString implementations or a
+     * {@link ConcurrentJSONObject}, are never cached and are written as usual.
+     * Pretty-printed texts are never cached.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param caching true to cache the compact JSON text.
+     */
+    public void setCachingSerializedForm(boolean caching) {
+        if (caching) {
+            serializedForm().caching = true;
+        } else if (this.serializedForm != null) {
+            this.serializedForm.caching = false;
+            this.serializedForm.invalidate();
+        }
+    }
+
+    /**
+     * Determine if this JSONObject caches its compact JSON text.
+     *
+     * @return true if the compact JSON text is cached.
+     * @see #setCachingSerializedForm(boolean)
+     */
+    public boolean isCachingSerializedForm() {
+        return this.serializedForm != null && this.serializedForm.caching;
+    }
+
+    /**
+     * Get the serialized form of this JSONObject, creating it if needed.
+     */
+    SerializedForm serializedForm() {
+        SerializedForm form = this.serializedForm;
+        if (form == null) {
+            // threads writing the same tree, as a ParallelJSONWriter does, must
+            // all link to the same form, or a change would miss some of them
+            SerializedForm created = new SerializedForm();
+            form = (SerializedForm) SERIALIZED_FORM.compareAndExchange(this, null, created);
+            if (form == null) {
+                form = created;
+            }
+        }
+        return form;
+    }
+
+    /**
+     * Drops the cached JSON text of this JSONObject and the containers it was
+     * written into. Called by every method changing the JSONObject.
+     */
+    private void changed() {
+        if (this.serializedForm != null) {
+            this.serializedForm.invalidate();
+        }
+    }
 
     /**
      * Retrieves the type of the underlying Map in this class.
@@ -167,6 +267,18 @@ public class JSONObject {
         map = new HashMap<>();
     }
 
+    /**
+     * Construct an empty JSONObject, which keeps its names in insertion order if
+     * <code>ordered</code> is true. Ordered JSONObjects are useful where the
+     * JSON text must reproduce the order of its source, for example to verify a
+     * signature or to produce diff-friendly output.
+     *
+     * @param ordered true to keep the names in insertion order.
+     */
+    public JSONObject(boolean ordered) {
+        map = ordered ? new InsertionOrderedMap() : new HashMap<>();
+    }
+
     /**
      * Construct a JSONObject from a subset of another JSONObject. An array of
      * strings is used to identify the keys that should be copied. Missing keys
@@ -193,7 +305,7 @@ public class JSONObject {
      *                       duplicated key.
      */
     public JSONObject(JSONTokener x) throws JSONException {
-        this();
+        this(x.isOrdered());
         char c;
         String key;
 
@@ -274,9 +386,9 @@ public class JSONObject {
         this.populateMap(bean);
     }
 
-    private JSONObject(Object bean, Set<Object> objectsRecord) {
+    private JSONObject(Object bean, CycleTracker tracker) {
         this();
-        this.populateMap(bean, objectsRecord);
+        this.populateMap(bean, tracker);
     }
 
     /**
@@ -357,6 +469,17 @@ public class JSONObject {
         }
     }
 
+    /**
+     * Construct an empty JSONObject whose properties are kept in the map created
+     * by the given factory. Used by the JSONObject variants of this package that
+     * need a different map implementation.
+     *
+     * @param mapFactory creates the map backing this JSONObject.
+     */
+    JSONObject(Supplier<Map<String, Object>> mapFactory) {
+        map = mapFactory.get();
+    }
+
     /**
      * Constructor to specify an initial capacity of the internal map. Useful for library
      * internal calls where we know, or at least can best guess, how big this JSONObject
@@ -368,6 +491,35 @@ public class JSONObject {
         map = new HashMap<>(initialCapacity);
     }
 
+    /**
+     * Make a JSONObject reading the entries of a Map, rather than copying
+     * them. A value is wrapped, as {@link #wrap(Object)} wraps it, the first
+     * time it is read with <code>get</code> or <code>opt</code>, and the
+     * JSONObject is written from the Map directly, so a large Map which is
+     * only written, or only partly read, is never copied. Changing the
+     * JSONObject, or iterating its keys or entries, copies the entries not
+     * read yet into it first.
+     * <p>
+     * A value which can't be wrapped is left out, by <code>has</code>,
+     * <code>opt</code> and the key set alike. Asking for the
+     * <code>length()</code> wraps all the values, to leave those out.
+     * <p>
+     * The Map must not change while the JSONObject reads from it. As any other
+     * JSONObject, the view may be read from several threads while it isn't
+     * changed: threads reading the same value first get the same wrapped value.
+     *
+     * @param map A map with String keys. The entries with a null value are
+     *            left out.
+     * @return A JSONObject reading from the map.
+     * @throws NullPointerException If the map is null.
+     */
+    public static JSONObject view(Map<String, ?> map) {
+        if (map == null) {
+            throw new NullPointerException("Null map.");
+        }
+        return new JSONObject(() -> new MapView(map));
+    }
+
     /**
      * Accumulate values under a key. It is similar to the put method except
      * that if there is already an object stored under the key then a JSONArray
@@ -437,17 +589,27 @@ public class JSONObject {
             return "null";
         }
 
-// Shave off trailing zeros and decimal point, if possible.
+        return trimFraction(Double.toString(d));
+    }
 
-        String string = Double.toString(d);
+    /**
+     * Shave off trailing zeros and decimal point of a number without exponent,
+     * if possible.
+     *
+     * @param string the number text
+     * @return the shortened text
+     */
+    private static String trimFraction(String string) {
         if (string.indexOf('.') > 0 && string.indexOf('e') < 0
                 && string.indexOf('E') < 0) {
-            while (!string.isEmpty() && string.charAt(string.length() - 1) == '0') {
-                string = string.substring(0, string.length() - 1);
+            int end = string.length();
+            while (string.charAt(end - 1) == '0') {
+                end--;
             }
-            if (!string.isEmpty() && string.charAt(string.length() - 1) == '.') {
-                string = string.substring(0, string.length() - 1);
+            if (string.charAt(end - 1) == '.') {
+                end--;
             }
+            return string.substring(0, end);
         }
         return string;
     }
@@ -801,23 +963,157 @@ public class JSONObject {
      * @see Map#keySet()
      */
     public Set<String> keySet() {
-        return map.keySet();
+        Set<String> keys = this.keySet;
+        if (keys == null) {
+            keys = new KeySet();
+            this.keySet = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * The key set view. It drops the cached texts on removal, even if this
+     * JSONObject is only written into a cached container after the view is
+     * made.
+     */
+    private final class KeySet extends AbstractSet<String> {
+        @Override
+        public Iterator<String> iterator() {
+            Iterator<String> keys = map.keySet().iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return keys.next();
+                }
+
+                @Override
+                public void remove() {
+                    keys.remove();
+                    changed();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (map.keySet().remove(o)) {
+                changed();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            JSONObject.this.clear();
+        }
     }
 
     /**
      * Get a set of entries of the JSONObject. These are raw values and may not
      * match what is returned by the JSONObject get* and opt* functions. Modifying
      * the returned EntrySet or the Entry objects contained therein will modify the
-     * backing JSONObject. This does not return a clone or a read-only view.
-     * Use with caution.
+     * backing JSONObject, and drop its cached JSON text, see
+     * {@link #setCachingSerializedForm(boolean)}. This does not return a clone
+     * or a read-only view. Use with caution.
      *
      * @return An Entry Set
      * @see Map#entrySet()
      */
     protected Set<Entry<String, Object>> entrySet() {
+        Set<Entry<String, Object>> entries = this.entrySet;
+        if (entries == null) {
+            entries = new EntrySet();
+            this.entrySet = entries;
+        }
+        return entries;
+    }
+
+    /**
+     * Get the entries of the map, for reading them without the entry set view.
+     *
+     * @return the entry set of the map
+     */
+    Set<Entry<String, Object>> entries() {
         return map.entrySet();
     }
 
+    /**
+     * The entry set view. Like the key set view, it drops the cached texts when
+     * an entry is removed or its value is set.
+     */
+    private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            Iterator<Entry<String, Object>> entries = map.entrySet().iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    Entry<String, Object> entry = entries.next();
+                    return new AbstractMap.SimpleEntry<>(entry) {
+                        @Override
+                        public Object setValue(Object value) {
+                            super.setValue(value);
+                            Object previous = entry.setValue(value);
+                            changed();
+                            return previous;
+                        }
+                    };
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                    changed();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.entrySet().contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (map.entrySet().remove(o)) {
+                changed();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            JSONObject.this.clear();
+        }
+    }
+
     /**
      * Get the number of keys stored in the JSONObject.
      *
@@ -833,6 +1129,7 @@ public class JSONObject {
      */
     public void clear() {
         map.clear();
+        changed();
     }
 
     /**
@@ -870,20 +1167,278 @@ public class JSONObject {
             throw new JSONException("Null pointer");
         }
         testValidity(number);
+        return trimFraction(number.toString());
+    }
+
+    /**
+     * Produce the JSON text of a Number. The standard Number types always have a
+     * valid JSON form. Other Numbers are checked, and quoted as a string if their
+     * text is not a valid JSON number.
+     *
+     * @param number A Number
+     * @return the JSON text of the number.
+     * @throws JSONException If number is a non-finite number.
+     */
+    static String numberToJSONText(Number number) throws JSONException {
+        if (number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte) {
+            return number.toString();
+        }
+        final String numberAsString = numberToString(number);
+        if (number instanceof Double || number instanceof Float
+                || number instanceof BigDecimal || number instanceof BigInteger
+                || isJSONNumber(numberAsString)) {
+            return numberAsString;
+        }
+        // not all Numbers may match actual JSON Numbers. i.e. fractions or Imaginary
+        return quote(numberAsString);
+    }
 
-        // Shave off trailing zeros and decimal point, if possible.
+    /**
+     * Write the JSON text of a Number. Integral values of the standard types are
+     * written digit by digit, without creating a String.
+     *
+     * @param writer the writer to write to
+     * @param number A Number
+     * @throws JSONException If number is a non-finite number.
+     * @throws IOException   If the writer fails.
+     */
+    static void writeNumber(Writer writer, Number number) throws JSONException, IOException {
+        if (number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte) {
+            writeLong(writer, number.longValue());
+        } else {
+            writer.write(numberToJSONText(number));
+        }
+    }
 
-        String string = number.toString();
-        if (string.indexOf('.') > 0 && string.indexOf('e') < 0
-                && string.indexOf('E') < 0) {
-            while (!string.isEmpty() && string.charAt(string.length() - 1) == '0') {
-                string = string.substring(0, string.length() - 1);
+    /**
+     * Write the decimal digits of a long.
+     *
+     * @param writer the writer to write to
+     * @param value  the value to write
+     * @throws IOException If the writer fails.
+     */
+    static void writeLong(Writer writer, long value) throws IOException {
+        if (value >= 0 && value < 10) {
+            writer.write((int) ('0' + value));
+            return;
+        }
+        char[] digits = new char[20];
+        int position = digits.length;
+        // work with the negative value, so Long.MIN_VALUE needs no special case
+        long n = value < 0 ? value : -value;
+        do {
+            long q = n / 10;
+            digits[--position] = (char) ('0' + (q * 10 - n));
+            n = q;
+        } while (n != 0);
+        if (value < 0) {
+            digits[--position] = '-';
+        }
+        writer.write(digits, position, digits.length - position);
+    }
+
+    /**
+     * Checks if a text is a number following the JSON grammar:
+     * <code>-?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?</code>.
+     *
+     * @param s the text to check
+     * @return true if s is a JSON number
+     */
+    static boolean isJSONNumber(String s) {
+        int length = s.length();
+        int i = 0;
+        if (i < length && s.charAt(i) == '-') {
+            i++;
+        }
+        if (i >= length) {
+            return false;
+        }
+        if (s.charAt(i) == '0') {
+            i++;
+        } else {
+            int digits = skipDigits(s, i);
+            if (digits == i) {
+                return false;
+            }
+            i = digits;
+        }
+        if (i < length && s.charAt(i) == '.') {
+            int digits = skipDigits(s, i + 1);
+            if (digits == i + 1) {
+                return false;
+            }
+            i = digits;
+        }
+        if (i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                i++;
             }
-            if (!string.isEmpty() && string.charAt(string.length() - 1) == '.') {
-                string = string.substring(0, string.length() - 1);
+            int digits = skipDigits(s, i);
+            if (digits == i) {
+                return false;
             }
+            i = digits;
         }
-        return string;
+        return i == length;
+    }
+
+    private static int skipDigits(String s, int i) {
+        while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Computes the exact length of the compact JSON text of a value, as written
+     * by {@link #writeValue(Writer, Object, JSONPrettyPrinter, int)}, without
+     * writing it.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     *
+     * @param value The value to measure.
+     * @param utf8  true to count UTF-8 bytes, false to count chars.
+     * @return the length of the JSON text.
+     * @throws JSONException If the value is or contains an invalid number.
+     */
+    static long serializedLength(Object value, boolean utf8) throws JSONException {
+        if (value == null) {
+            return 4;
+        }
+        // the same dispatch as writeValue, so both agree on every kind
+        switch (ValueKind.of(value)) {
+            case JSON_STRING:
+                Object o;
+                try {
+                    o = ((JSONString) value).toJSONString();
+                } catch (Exception e) {
+                    throw new JSONException(e);
+                }
+                return textLength(o != null ? o.toString() : quote(value.toString()), utf8);
+            case STRING:
+                return quotedLength((String) value, utf8);
+            case NUMBER:
+            case OTHER_NUMBER:
+                if (value instanceof Integer || value instanceof Long
+                        || value instanceof Short || value instanceof Byte) {
+                    return longLength(((Number) value).longValue());
+                }
+                return textLength(numberToJSONText((Number) value), utf8);
+            case BOOLEAN:
+                return ((Boolean) value) ? 4 : 5;
+            case ENUM:
+                return quotedLength(((Enum<?>) value).name(), utf8);
+            case JSON_OBJECT: {
+                JSONObject jo = (JSONObject) value;
+                long length = 1 + Math.max(jo.length(), 1);
+                for (final Entry<String, Object> entry : jo.entries()) {
+                    length += quotedLength(entry.getKey(), utf8) + 1 + serializedLength(entry.getValue(), utf8);
+                }
+                return length;
+            }
+            case JSON_ARRAY: {
+                JSONArray ja = (JSONArray) value;
+                long length = 1 + Math.max(ja.length(), 1);
+                for (Object element : ja) {
+                    length += serializedLength(element, utf8);
+                }
+                return length;
+            }
+            case MAP:
+                return serializedLength(new JSONObject((Map<?, ?>) value), utf8);
+            case COLLECTION:
+                return serializedLength(new JSONArray((Collection<?>) value), utf8);
+            case ARRAY:
+                return serializedLength(new JSONArray(value), utf8);
+            case CODEC:
+                JSONCodec<Object> codec = CodecRegistry.forClass(value.getClass());
+                return serializedLength(codec.toJSONObject(value, JSONCodec.Context.of(value)), utf8);
+            default:
+                return quotedLength(value.toString(), utf8);
+        }
+    }
+
+    /**
+     * Computes the length of the text written by {@link #quote(String, Writer)}.
+     */
+    private static long quotedLength(String string, boolean utf8) {
+        if (string == null) {
+            return 2;
+        }
+        int len = string.length();
+        long length = 2 + len;
+        for (int i = 0; i < len; i++) {
+            char c = string.charAt(i);
+            if (isEscape(string, i, c)) {
+                length += escapeLength(c) - 1;
+            } else if (utf8 && c >= 0x80) {
+                int extra = utf8Extra(string, i, c);
+                if (extra == 2 && Character.isHighSurrogate(c)) {
+                    // the pair takes 4 bytes for 2 chars
+                    i++;
+                }
+                length += extra;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Computes the length of a text written as is.
+     */
+    private static long textLength(String text, boolean utf8) {
+        int len = text.length();
+        long length = len;
+        if (utf8) {
+            for (int i = 0; i < len; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    int extra = utf8Extra(text, i, c);
+                    if (extra == 2 && Character.isHighSurrogate(c)) {
+                        i++;
+                    }
+                    length += extra;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The number of UTF-8 bytes of a non-ASCII char beyond the one counted for
+     * it. A surrogate pair counts 2 for each of its chars, and an unpaired
+     * surrogate is encoded as a single <code>'?'</code>, like {@link Utf8Writer}
+     * does.
+     */
+    private static int utf8Extra(String s, int i, char c) {
+        if (c < 0x800) {
+            return 1;
+        }
+        if (Character.isHighSurrogate(c)) {
+            return i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)) ? 2 : 0;
+        }
+        return Character.isLowSurrogate(c) ? 0 : 2;
+    }
+
+    /**
+     * Computes the number of chars written by {@link #writeLong(Writer, long)}.
+     */
+    static int longLength(long value) {
+        int length = 1;
+        if (value < 0) {
+            length++;
+        } else {
+            value = -value;
+        }
+        // work with the negative value, so Long.MIN_VALUE needs no special case
+        while (value <= -10) {
+            value /= 10;
+            length++;
+        }
+        return length;
     }
 
     /**
@@ -1489,114 +2044,60 @@ public class JSONObject {
      * @see JSONObject#JSONObject(Object)
      */
     private void populateMap(Object bean) {
-        populateMap(bean, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
-    }
-
-    private void populateMap(Object bean, Set<Object> objectsRecord) {
-        Class<?> klass = bean.getClass();
-
-        // If klass is a System class then set includeSuperClass to false.
-
-        boolean includeSuperClass = klass.getClassLoader() != null;
-
-        Method[] methods = includeSuperClass ? klass.getMethods() : klass.getDeclaredMethods();
-        for (final Method method : methods) {
-            final String key = getKeyNameFromMethod(method);
-            if (key != null && !key.isEmpty()) {
-                try {
-                    final Object result = method.invoke(bean);
-                    if (result != null) {
-                        // check cyclic dependency and throw error if needed
-                        // the wrap and populateMap combination method is
-                        // itself DFS recursive
-                        if (objectsRecord.contains(result)) {
-                            throw recursivelyDefinedObjectException(key);
-                        }
-
-                        objectsRecord.add(result);
-
-                        testValidity(result);
-                        this.map.put(key, wrap(result, objectsRecord));
-
-                        objectsRecord.remove(result);
-
-                        closeClosable(result);
-                    }
-                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ignore) {
-                }
-            }
-        }
-    }
-
-    private static boolean isValidMethodName(String name) {
-        return !"getClass".equals(name) && !"getDeclaringClass".equals(name);
+        CycleTracker tracker = new CycleTracker();
+        tracker.enter(bean);
+        populateMap(bean, tracker);
     }
 
-    private static String getKeyNameFromMethod(Method method) {
-        if (!isValidMethod(method)) {
-            return null;
+    private void populateMap(Object bean, CycleTracker tracker) {
+        JSONCodec<Object> codec = CodecRegistry.forClass(bean.getClass());
+        if (codec != null) {
+            this.map.putAll(codec.toJSONObject(bean, new JSONCodec.Context(tracker)).map);
+            return;
         }
+        for (final BeanDescriptor.Property property : BeanDescriptor.of(bean.getClass()).properties()) {
+            final String key = property.key;
+            try {
+                final Object result = property.get(bean);
+                if (result != null) {
+                    this.map.put(key, wrapProperty(key, result, tracker));
 
-        final int ignoreDepth = getAnnotationDepth(method, JSONPropertyIgnore.class);
-        if (ignoreDepth > 0) {
-            final int forcedNameDepth = getAnnotationDepth(method, JSONPropertyName.class);
-            if (forcedNameDepth < 0 || ignoreDepth <= forcedNameDepth) {
-                // the hierarchy asked to ignore, and the nearest name override
-                // was higher or non-existent
-                return null;
+                    closeClosable(result);
+                }
+            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ignore) {
             }
         }
-        JSONPropertyName annotation = getAnnotation(method, JSONPropertyName.class);
-        if (annotationValueNotEmpty(annotation)) {
-            return annotation.value();
-        }
-        String key;
-        final String name = method.getName();
-        if (name.startsWith("get") && name.length() > 3) {
-            key = name.substring(3);
-        } else if (name.startsWith("is") && name.length() > 2) {
-            key = name.substring(2);
-        } else {
-            return null;
-        }
-        // if the first letter in the key is not uppercase, then skip.
-        // This is to maintain backwards compatibility before PR406
-        // (https://github.com/stleary/JSON-java/pull/406/)
-        if (Character.isLowerCase(key.charAt(0))) {
-            return null;
-        }
-        if (key.length() == 1) {
-            key = key.toLowerCase(Locale.ROOT);
-        } else if (!Character.isUpperCase(key.charAt(1))) {
-            key = key.substring(0, 1).toLowerCase(Locale.ROOT) + key.substring(1);
-        }
-        return key;
     }
 
     /**
-     * checks if the annotation is not null and the {@link JSONPropertyName#value()} is not null and is not empty.
+     * Wrap the value of a property of a bean being converted, entering it in
+     * the tracker while it is wrapped.
      *
-     * @param annotation the annotation to check
-     * @return true if the annotation and the value is not null and not empty, false otherwise.
+     * @param key     the key of the property
+     * @param value   the value of the property, not null
+     * @param tracker the values being converted
+     * @return the wrapped value
+     * @throws JSONException If the value is a non-finite number, or holds a
+     *                       value being converted.
      */
-    private static boolean annotationValueNotEmpty(JSONPropertyName annotation) {
-        return annotation != null && annotation.value() != null && !annotation.value().isEmpty();
-    }
+    static Object wrapProperty(String key, Object value, CycleTracker tracker) {
+        // check cyclic dependency and throw error if needed
+        // the wrap and populateMap combination method is
+        // itself DFS recursive. Only beans and containers
+        // can lead back to a value being converted.
+        final ValueKind kind = ValueKind.ofWrapped(value);
+        final boolean tracked = kind.isComposite();
+        if (tracked && !tracker.enter(value)) {
+            throw recursivelyDefinedObjectException(key);
+        }
 
-    /**
-     * Checks if the method is valid for the {@link #populateMap(Object, Set)} use case
-     *
-     * @param method the Method to check
-     * @return true, if valid, false otherwise.
-     */
-    private static boolean isValidMethod(Method method) {
-        final int modifiers = method.getModifiers();
-        return Modifier.isPublic(modifiers)
-                && !Modifier.isStatic(modifiers)
-                && method.getParameterTypes().length == 0
-                && !method.isBridge()
-                && method.getReturnType() != Void.TYPE
-                && isValidMethodName(method.getName());
+        testValidity(value);
+        Object wrapped = wrap(value, kind, tracker);
+
+        if (tracked) {
+            tracker.exit(value);
+        }
+        return wrapped;
     }
 
     /**
@@ -1604,7 +2105,7 @@ public class JSONObject {
      *
      * @param input the input to close, if possible.
      */
-    private static void closeClosable(Object input) {
+    static void closeClosable(Object input) {
         // we don't use the result anywhere outside of wrap
         // if it's a resource we should be sure to close it
         // after calling toString
@@ -1617,111 +2118,7 @@ public class JSONObject {
     }
 
     /**
-     * Searches the class hierarchy to see if the method or it's super
-     * implementations and interfaces has the annotation.
-     *
-     * @param <A>             type of the annotation
-     * @param m               method to check
-     * @param annotationClass annotation to look for
-     * @return the {@link Annotation} if the annotation exists on the current method
-     * or one of its super class definitions
-     */
-    private static <A extends Annotation> A getAnnotation(final Method m, final Class<A> annotationClass) {
-        // if we have invalid data the result is null
-        if (m == null || annotationClass == null) {
-            return null;
-        }
-
-        if (m.isAnnotationPresent(annotationClass)) {
-            return m.getAnnotation(annotationClass);
-        }
-
-        // if we've already reached the Object class, return null;
-        Class<?> c = m.getDeclaringClass();
-        if (c.getSuperclass() == null) {
-            return null;
-        }
-
-        // check directly implemented interfaces for the method being checked
-        for (Class<?> i : c.getInterfaces()) {
-            try {
-                Method im = i.getMethod(m.getName(), m.getParameterTypes());
-                return getAnnotation(im, annotationClass);
-            } catch (final SecurityException | NoSuchMethodException ignored) {
-            }
-        }
-
-        //If the superclass is Object, no annotations will be found any more
-        if (Object.class.equals(c.getSuperclass()))
-            return null;
-
-        try {
-            return getAnnotation(
-                    c.getSuperclass().getMethod(m.getName(), m.getParameterTypes()),
-                    annotationClass);
-        } catch (final SecurityException | NoSuchMethodException ex) {
-            return null;
-        }
-    }
-
-    /**
-     * Searches the class hierarchy to see if the method or it's super
-     * implementations and interfaces has the annotation. Returns the depth of the
-     * annotation in the hierarchy.
-     *
-     * @param m               method to check
-     * @param annotationClass annotation to look for
-     * @return Depth of the annotation or -1 if the annotation is not on the method.
-     */
-    private static int getAnnotationDepth(final Method m, final Class<? extends Annotation> annotationClass) {
-        // if we have invalid data the result is -1
-        if (m == null || annotationClass == null) {
-            return -1;
-        }
-
-        if (m.isAnnotationPresent(annotationClass)) {
-            return 1;
-        }
-
-        // if we've already reached the Object class, return -1;
-        Class<?> c = m.getDeclaringClass();
-        if (c.getSuperclass() == null) {
-            return -1;
-        }
-
-        // check directly implemented interfaces for the method being checked
-        for (Class<?> i : c.getInterfaces()) {
-            try {
-                Method im = i.getMethod(m.getName(), m.getParameterTypes());
-                int d = getAnnotationDepth(im, annotationClass);
-                if (d > 0) {
-                    // since the annotation was on the interface, add 1
-                    return d + 1;
-                }
-            } catch (final SecurityException | NoSuchMethodException ignored) {
-            }
-        }
-
-        //If the superclass is Object, no annotations will be found any more
-        if (Object.class.equals(c.getSuperclass()))
-            return -1;
-
-        try {
-            int d = getAnnotationDepth(
-                    c.getSuperclass().getMethod(m.getName(), m.getParameterTypes()),
-                    annotationClass);
-            if (d > 0) {
-                // since the annotation was on the superclass, add 1
-                return d + 1;
-            }
-            return -1;
-        } catch (final SecurityException | NoSuchMethodException ex) {
-            return -1;
-        }
-    }
-
-    /**
-     * Put a key/boolean pair in the JSONObject.
+     * Put a key/boolean pair in the JSONObject.
      *
      * @param key   A key string.
      * @param value A boolean which is the value.
@@ -1832,6 +2229,7 @@ public class JSONObject {
         if (value != null) {
             testValidity(value);
             map.put(key, value);
+            changed();
         } else {
             remove(key);
         }
@@ -1965,7 +2363,11 @@ public class JSONObject {
         if (string == null || string.isEmpty()) {
             return "\"\"";
         }
-        Writer sw = new StringBuilderWriter(string.length() + 2);
+        if (indexOfEscape(string, 0) < 0) {
+            // most strings need no escaping at all
+            return '"' + string + '"';
+        }
+        Writer sw = new StringBuilderWriter(string.length() + 8);
         try {
             return quote(string, sw).toString();
         } catch (IOException ignored) {
@@ -1975,7 +2377,8 @@ public class JSONObject {
     }
 
     /**
-     * Quotes a string and appends the result to a given Writer.
+     * Quotes a string and appends the result to a given Writer. The runs of
+     * characters between escapes are written with a single call each.
      *
      * @param string The input string to be quoted.
      * @param w      The Writer to which the quoted string will be appended.
@@ -1988,59 +2391,123 @@ public class JSONObject {
             return w;
         }
 
-        char b;
-        char c = 0;
-        String hhhh;
-        int i;
         int len = string.length();
+        int start = 0;
+        int i;
 
         w.write('"');
-        for (i = 0; i < len; i += 1) {
-            b = c;
-            c = string.charAt(i);
-            switch (c) {
-                case '\\':
-                case '"':
-                    w.write('\\');
-                    w.write(c);
-                    break;
-                case '/':
-                    if (b == '<') {
-                        w.write('\\');
-                    }
-                    w.write(c);
-                    break;
-                case '\b':
-                    w.write("\\b");
-                    break;
-                case '\t':
-                    w.write("\\t");
-                    break;
-                case '\n':
-                    w.write("\\n");
-                    break;
-                case '\f':
-                    w.write("\\f");
-                    break;
-                case '\r':
-                    w.write("\\r");
-                    break;
-                default:
-                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0')
-                            || (c >= '\u2000' && c < '\u2100')) {
-                        w.write("\\u");
-                        hhhh = Integer.toHexString(c);
-                        w.write("0000", 0, 4 - hhhh.length());
-                        w.write(hhhh);
-                    } else {
-                        w.write(c);
-                    }
+        while ((i = indexOfEscape(string, start)) >= 0) {
+            if (i > start) {
+                w.write(string, start, i - start);
             }
+            writeEscape(string.charAt(i), w);
+            start = i + 1;
+        }
+        if (start < len) {
+            w.write(string, start, len - start);
         }
         w.write('"');
         return w;
     }
 
+    /**
+     * Characters below 128 that quote() can't copy as is: the control characters,
+     * the quote and backslash, and the slash which is escaped after a '&lt;'.
+     */
+    private static final boolean[] ASCII_ESCAPES = new boolean[128];
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    static {
+        for (int c = 0; c < ' '; c++) {
+            ASCII_ESCAPES[c] = true;
+        }
+        ASCII_ESCAPES['"'] = true;
+        ASCII_ESCAPES['\\'] = true;
+        ASCII_ESCAPES['/'] = true;
+    }
+
+    /**
+     * Finds the next character of a string that quote() has to escape.
+     *
+     * @param string the string to scan
+     * @param from   the index to start scanning at
+     * @return the index of the character, or -1 if there is none
+     */
+    private static int indexOfEscape(String string, int from) {
+        for (int i = from, len = string.length(); i < len; i++) {
+            char c = string.charAt(i);
+            if (isEscape(string, i, c)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if quote() has to escape the character at an index of a string.
+     */
+    private static boolean isEscape(String string, int i, char c) {
+        if (c < 128) {
+            return ASCII_ESCAPES[c] && (c != '/' || (i > 0 && string.charAt(i - 1) == '<'));
+        }
+        return c < '\u00a0' || (c >= '\u2000' && c < '\u2100');
+    }
+
+    /**
+     * The length of the escape sequence written by {@link #writeEscape(char, Writer)}.
+     */
+    private static int escapeLength(char c) {
+        switch (c) {
+            case '\\':
+            case '"':
+            case '/':
+            case '\b':
+            case '\t':
+            case '\n':
+            case '\f':
+            case '\r':
+                return 2;
+            default:
+                return 6;
+        }
+    }
+
+    /**
+     * Writes the escape sequence of a character found by {@link #indexOfEscape(String, int)}.
+     */
+    private static void writeEscape(char c, Writer w) throws IOException {
+        switch (c) {
+            case '\\':
+            case '"':
+            case '/':
+                w.write('\\');
+                w.write(c);
+                break;
+            case '\b':
+                w.write("\\b");
+                break;
+            case '\t':
+                w.write("\\t");
+                break;
+            case '\n':
+                w.write("\\n");
+                break;
+            case '\f':
+                w.write("\\f");
+                break;
+            case '\r':
+                w.write("\\r");
+                break;
+            default:
+                w.write("\\u");
+                w.write(HEX_DIGITS[c >>> 12]);
+                w.write(HEX_DIGITS[(c >>> 8) & 0xF]);
+                w.write(HEX_DIGITS[(c >>> 4) & 0xF]);
+                w.write(HEX_DIGITS[c & 0xF]);
+        }
+    }
+
     /**
      * Remove a name and its value, if present.
      *
@@ -2049,7 +2516,9 @@ public class JSONObject {
      * no value.
      */
     public Object remove(String key) {
-        return map.remove(key);
+        Object removed = map.remove(key);
+        changed();
+        return removed;
     }
 
     /**
@@ -2069,7 +2538,7 @@ public class JSONObject {
             if (!keySet().equals(((JSONObject) other).keySet())) {
                 return false;
             }
-            for (final Entry<String, ?> entry : entrySet()) {
+            for (final Entry<String, ?> entry : entries()) {
                 String name = entry.getKey();
                 Object valueThis = entry.getValue();
                 Object valueOther = ((JSONObject) other).get(name);
@@ -2306,6 +2775,112 @@ public class JSONObject {
         return ja;
     }
 
+    /**
+     * Make a deep copy of this JSONObject. Nested JSONObjects and JSONArrays are
+     * copied, while all other values (Strings, Numbers, Booleans, NULL and any
+     * other value that was put directly) are shared with the original, as they
+     * are treated as immutable. A nested {@link ConcurrentJSONObject} is copied
+     * from its {@link ConcurrentJSONObject#snapshot()}, as a plain JSONObject
+     * holding the sums of its counters. The copy is made without recursion, so
+     * deeply nested documents can't overflow the stack.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return A new JSONObject with the same content as this one.
+     */
+    public JSONObject deepCopy() {
+        return (JSONObject) deepCopy(this);
+    }
+
+    /**
+     * Estimate the number of heap bytes retained by this JSONObject, including
+     * its map and all nested values, based on the object layout of the running
+     * JVM. This is meant for weight based eviction of cached documents, not as
+     * an exact measurement. The tree is walked without recursion.
+     *
+     * @return The estimated number of bytes retained by this JSONObject.
+     */
+    public long retainedSizeEstimate() {
+        return RetainedSizeEstimator.estimate(this);
+    }
+
+    /**
+     * Deep copies a JSONObject or JSONArray tree. Any other value is returned as is.
+     * The pending containers are kept on an explicit stack as (source, copy) pairs
+     * instead of recursing, and every copy is allocated with its final size.
+     *
+     * @param value the value to copy
+     * @return the copied value
+     */
+    static Object deepCopy(Object value) {
+        value = copySource(value);
+        Object root = newContainerCopy(value);
+        if (root == value) {
+            return value;
+        }
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(value);
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object copy = pending.pop();
+            Object source = pending.pop();
+            if (source instanceof JSONObject) {
+                Map<String, Object> target = ((JSONObject) copy).map;
+                for (Entry<String, Object> entry : ((JSONObject) source).entries()) {
+                    Object element = copySource(entry.getValue());
+                    Object elementCopy = newContainerCopy(element);
+                    if (elementCopy != element) {
+                        pending.push(element);
+                        pending.push(elementCopy);
+                    }
+                    target.put(entry.getKey(), elementCopy);
+                }
+            } else {
+                JSONArray target = (JSONArray) copy;
+                for (Object element : (JSONArray) source) {
+                    element = copySource(element);
+                    Object elementCopy = newContainerCopy(element);
+                    if (elementCopy != element) {
+                        pending.push(element);
+                        pending.push(elementCopy);
+                    }
+                    target.put(elementCopy);
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Get the value a copy is made from. A {@link ConcurrentJSONObject} is
+     * copied from its {@link ConcurrentJSONObject#snapshot()}, so the copy holds
+     * the sums of its counters rather than sharing the live counters.
+     */
+    private static Object copySource(Object value) {
+        return value instanceof ConcurrentJSONObject ? ((ConcurrentJSONObject) value).snapshot() : value;
+    }
+
+    /**
+     * Allocates an empty, correctly sized container for a JSONObject or JSONArray
+     * value. Leaf values are returned unchanged as they are shared by the copy.
+     */
+    private static Object newContainerCopy(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject jo = (JSONObject) value;
+            int length = jo.length();
+            if (jo.isOrdered()) {
+                return new JSONObject(() -> new InsertionOrderedMap(length));
+            }
+            // size the map so it never has to rehash while being filled
+            return new JSONObject((int) (length / 0.75f) + 1);
+        }
+        if (value instanceof JSONArray) {
+            return new JSONArray(((JSONArray) value).length());
+        }
+        return value;
+    }
+
     /**
      * Make a JSON text of this JSONObject. For compactness, no whitespace is
      * added. If this would not result in a syntactically correct JSON text,
@@ -2360,6 +2935,26 @@ public class JSONObject {
         return write(w, indentFactor, 0).toString();
     }
 
+    /**
+     * Make a pretty-printed JSON text of this JSONObject, in the whitespace
+     * style of a {@link JSONPrettyPrinter}. Like {@link #toString(int)}, an
+     * object with only one key is output on a single line.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param printer The whitespace style.
+     * @return a printable, displayable, portable, transmittable representation
+     * of the object, beginning with <code>{</code>&nbsp;<small>(left
+     * brace)</small> and ending with <code>}</code>&nbsp;<small>(right
+     * brace)</small>.
+     * @throws JSONException If the object contains an invalid number.
+     */
+    public String toString(JSONPrettyPrinter printer) throws JSONException {
+        Writer w = new StringBuilderWriter(Math.max(map.size() * 6, 16));
+        return write(w, printer).toString();
+    }
+
     /**
      * Make a JSON text of an Object value. If the object has an
      * value.toJSONString() method, then that method will be used to produce the
@@ -2402,51 +2997,118 @@ public class JSONObject {
      * @return The wrapped value
      */
     public static Object wrap(Object object) {
-        return wrap(object, null);
+        if (NULL.equals(object)) {
+            return NULL;
+        }
+        return wrap(object, ValueKind.ofWrapped(object), null);
     }
 
-    private static Object wrap(Object object, Set<Object> objectsRecord) {
+    /**
+     * Wrap an object of a known kind.
+     *
+     * @param object  The object to wrap, not null
+     * @param kind    The kind of the object, as {@link ValueKind#ofWrapped(Object)} gives it
+     * @param tracker The values being converted, while a bean is converted, or null
+     * @return The wrapped value
+     */
+    private static Object wrap(Object object, ValueKind kind, CycleTracker tracker) {
         try {
-            if (NULL.equals(object)) {
+            if (object == NULL) {
                 return NULL;
             }
-            if (object instanceof JSONObject || object instanceof JSONArray
-                    || object instanceof JSONString || object instanceof String
-                    || object instanceof Byte || object instanceof Character
-                    || object instanceof Short || object instanceof Integer
-                    || object instanceof Long || object instanceof Boolean
-                    || object instanceof Float || object instanceof Double
-                    || object instanceof BigInteger || object instanceof BigDecimal
-                    || object instanceof Enum) {
-                return object;
+            switch (kind) {
+                case COLLECTION:
+                case ARRAY:
+                    if (tracker != null) {
+                        return wrapElements(object, tracker);
+                    }
+                    return kind == ValueKind.COLLECTION
+                            ? new JSONArray((Collection<?>) object) : new JSONArray(object);
+                case MAP:
+                    if (tracker != null) {
+                        return wrapEntries((Map<?, ?>) object, tracker);
+                    }
+                    return new JSONObject((Map<?, ?>) object);
+                case CODEC:
+                    return CodecRegistry.forClass(object.getClass()).toJSONObject(object,
+                            tracker != null ? new JSONCodec.Context(tracker) : JSONCodec.Context.of(object));
+                case STRINGIFIED:
+                    return object.toString();
+                case BEAN:
+                    if (tracker != null) {
+                        return new JSONObject(object, tracker);
+                    }
+                    return new JSONObject(object);
+                default:
+                    return object;
             }
+        } catch (JSONException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            return null;
+        }
+    }
 
-            if (object instanceof Collection<?> coll) {
-                return new JSONArray(coll);
-            }
-            if (object.getClass().isArray()) {
-                return new JSONArray(object);
+    /**
+     * Wrap a value held by a Collection, array or Map met while converting a
+     * bean, so a value holding itself through it is detected.
+     */
+    private static Object wrapTracked(Object value, CycleTracker tracker) {
+        if (NULL.equals(value)) {
+            return NULL;
+        }
+        ValueKind kind = ValueKind.ofWrapped(value);
+        if (!kind.isComposite()) {
+            return wrap(value, kind, null);
+        }
+        if (!tracker.enter(value)) {
+            throw new JSONException("Value contains itself.");
+        }
+        Object wrapped = wrap(value, kind, tracker);
+        tracker.exit(value);
+        return wrapped;
+    }
+
+    /**
+     * Wrap the elements of a Collection or array met while converting a bean,
+     * like {@link JSONArray#JSONArray(Object)} does.
+     */
+    private static JSONArray wrapElements(Object values, CycleTracker tracker) {
+        if (values instanceof Collection<?> coll) {
+            JSONArray ja = new JSONArray(coll.size());
+            for (Object element : coll) {
+                ja.put(wrapTracked(element, tracker));
             }
-            if (object instanceof Map<?, ?> map) {
-                return new JSONObject(map);
+            return ja;
+        }
+        if (values instanceof Object[] objects) {
+            JSONArray ja = new JSONArray(objects.length);
+            for (Object element : objects) {
+                ja.put(wrapTracked(element, tracker));
             }
-            Package objectPackage = object.getClass().getPackage();
-            String objectPackageName = objectPackage != null ? objectPackage
-                    .getName() : "";
-            if (objectPackageName.startsWith("java.")
-                    || objectPackageName.startsWith("javax.")
-                    || object.getClass().getClassLoader() == null) {
-                return object.toString();
+            return ja;
+        }
+        // the elements of an array of primitives can't hold anything
+        return new JSONArray(values);
+    }
+
+    /**
+     * Wrap the entries of a Map met while converting a bean, like
+     * {@link #JSONObject(Map)} does.
+     */
+    static JSONObject wrapEntries(Map<?, ?> m, CycleTracker tracker) {
+        JSONObject jo = new JSONObject(m.size());
+        for (Entry<?, ?> e : m.entrySet()) {
+            if (e.getKey() == null) {
+                throw new NullPointerException("Null key.");
             }
-            if (objectsRecord != null) {
-                return new JSONObject(object, objectsRecord);
+            final Object value = e.getValue();
+            if (value != null) {
+                testValidity(value);
+                jo.map.put(String.valueOf(e.getKey()), wrapTracked(value, tracker));
             }
-            return new JSONObject(object);
-        } catch (JSONException exception) {
-            throw exception;
-        } catch (Exception exception) {
-            return null;
         }
+        return jo;
     }
 
     /**
@@ -2464,56 +3126,353 @@ public class JSONObject {
         return write(writer, 0, 0);
     }
 
+    /**
+     * Make a compact JSON text of this JSONObject, encoded as UTF-8 bytes.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return The UTF-8 encoded JSON text.
+     * @throws JSONException If the JSONObject contains an invalid number.
+     * @see Utf8Writer
+     */
+    public byte[] toUtf8Bytes() throws JSONException {
+        Utf8Writer writer = new Utf8Writer(Math.max(length() * 6, 16));
+        write(writer, 0, 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Computes the exact length, in chars, of the compact JSON text of this
+     * JSONObject, as made by {@link #toString()}, without making the text.
+     * The length is computed on each call, it is not cached, as the JSONObject
+     * can change at any time.
+     * <p>
+     * Measuring takes about half the time of writing the text, so it only pays
+     * off when the length is needed anyway, for example for a Content-Length
+     * header, or to write into a buffer allocated once with the exact size:
+     * <pre>{@code
+     * Writer writer = new StringBuilderWriter((int) jsonObject.serializedLength());
+     * }</pre>
+     * A {@link Utf8Writer} sized with {@link #serializedUtf8Length()} never grows.
+     * <p>
+     * Values implementing {@link JSONString} have their toJSONString method
+     * called.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return the number of chars of the compact JSON text.
+     * @throws JSONException If the object contains an invalid number.
+     */
+    public long serializedLength() throws JSONException {
+        return serializedLength(this, false);
+    }
+
+    /**
+     * Computes the exact length, in bytes, of the compact JSON text of this
+     * JSONObject encoded as UTF-8, as made by {@link #toUtf8Bytes()}, without
+     * making the text. The length is computed on each call, it is not cached.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @return the number of bytes of the UTF-8 encoded compact JSON text.
+     * @throws JSONException If the object contains an invalid number.
+     * @see #serializedLength()
+     */
+    public long serializedUtf8Length() throws JSONException {
+        return serializedLength(this, true);
+    }
+
+    /**
+     * Write the contents of the JSONObject as compact JSON text to a stream, encoded
+     * as UTF-8. The stream is flushed, but not closed.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param out the stream receiving the UTF-8 encoded JSON text
+     * @return The stream.
+     * @throws JSONException if a called function has an error or a write error
+     *                       occurs
+     */
+    public OutputStream write(OutputStream out) throws JSONException {
+        Utf8Writer writer = new Utf8Writer(out);
+        write(writer, 0, 0);
+        try {
+            writer.flush();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return out;
+    }
+
+    /**
+     * Write the contents of the JSONObject as compact JSON text into a ByteBuffer,
+     * encoded as UTF-8, starting at its current position.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param buffer the buffer receiving the UTF-8 encoded JSON text
+     * @return The buffer, positioned after the JSON text.
+     * @throws JSONException if a called function has an error or if the buffer
+     *                       has no room left
+     */
+    public ByteBuffer write(ByteBuffer buffer) throws JSONException {
+        Utf8Writer writer = new Utf8Writer(buffer);
+        write(writer, 0, 0);
+        try {
+            writer.flush();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return buffer;
+    }
+
+    /**
+     * Write a value as JSON text.
+     *
+     * @param writer  Writes the serialized JSON
+     * @param value   The value to write.
+     * @param printer The whitespace style, or null for compact text.
+     * @param indent  The indentation of the value, in indentation characters.
+     * @return The writer.
+     */
     static Writer writeValue(Writer writer, Object value,
-                             int indentFactor, int indent) throws JSONException, IOException {
+                             JSONPrettyPrinter printer, int indent) throws JSONException, IOException {
         if (value == null) {
             writer.write("null");
-        } else if (value instanceof JSONString) {
-            // JSONString must be checked first, so it can overwrite behaviour of other types below
-            Object o;
+            return writer;
+        }
+        switch (ValueKind.of(value)) {
+            case JSON_STRING:
+                // JSONString must be checked first, so it can overwrite behaviour of other types below
+                Object o;
+                try {
+                    o = ((JSONString) value).toJSONString();
+                } catch (Exception e) {
+                    throw new JSONException(e);
+                }
+                writer.write(o != null ? o.toString() : quote(value.toString()));
+                break;
+            case STRING:
+                quote((String) value, writer);
+                break;
+            case NUMBER:
+            case OTHER_NUMBER:
+                writeNumber(writer, (Number) value);
+                break;
+            case BOOLEAN:
+                writer.write(value.toString());
+                break;
+            case ENUM:
+                writer.write(quote(((Enum<?>) value).name()));
+                break;
+            case JSON_OBJECT:
+                if (value.getClass() == JSONObject.class || !isIndentFactorStyle(printer)) {
+                    ((JSONObject) value).write(writer, printer, indent);
+                } else {
+                    // through the public method, so a subclass overriding it still writes its instances
+                    ((JSONObject) value).write(writer, printer == null ? 0 : printer.indentFactor(), indent);
+                }
+                break;
+            case JSON_ARRAY:
+                if (value.getClass() == JSONArray.class || !isIndentFactorStyle(printer)) {
+                    ((JSONArray) value).write(writer, printer, indent);
+                } else {
+                    ((JSONArray) value).write(writer, printer == null ? 0 : printer.indentFactor(), indent);
+                }
+                break;
+            case MAP:
+                writeMap(writer, (Map<?, ?>) value, null, printer, indent);
+                break;
+            case COLLECTION:
+                writeElements(writer, (Collection<?>) value, printer, indent);
+                break;
+            case ARRAY:
+                if (value instanceof Object[] objects) {
+                    writeElements(writer, Arrays.asList(objects), printer, indent);
+                } else {
+                    // the typed loops of JSONArray read primitives faster than reflection
+                    new JSONArray(value).write(writer, printer, indent);
+                }
+                break;
+            case CODEC:
+                JSONCodec<Object> codec = CodecRegistry.forClass(value.getClass());
+                if (printer == null) {
+                    codec.write(value, writer, JSONCodec.Context.of(value));
+                } else {
+                    codec.toJSONObject(value, JSONCodec.Context.of(value)).write(writer, printer, indent);
+                }
+                break;
+            default:
+                quote(value.toString(), writer);
+                break;
+        }
+        return writer;
+    }
+
+    /**
+     * Checks if a whitespace style is one of {@link #write(Writer, int, int)},
+     * including the compact one.
+     */
+    private static boolean isIndentFactorStyle(JSONPrettyPrinter printer) {
+        return printer == null || printer.indentFactor() >= 0;
+    }
+
+    /**
+     * Write the entries of a Map as the JSONObject made from it would write
+     * them, without making the JSONObject: the keys are converted with
+     * {@link String#valueOf(Object)}, the entries with a null value are left
+     * out, and the other values are written as {@link #wrap(Object)} would
+     * wrap them. The entries are written in the order of the Map. A Map with
+     * keys other than Strings is copied into a JSONObject first, so keys with
+     * the same String value make a single member, the last one winning, as
+     * they do in the JSONObject.
+     *
+     * @param writer  Writes the serialized JSON
+     * @param map     The map to write.
+     * @param wrapped The values already wrapped, by key, written instead of
+     *                those of the map, or null.
+     * @param printer The whitespace style, or null for compact text.
+     * @param indent  The indentation of the map, in indentation characters.
+     * @throws NullPointerException If the map has a null key.
+     */
+    static void writeMap(Writer writer, Map<?, ?> map, Map<String, Object> wrapped,
+                         JSONPrettyPrinter printer, int indent) throws JSONException, IOException {
+        if (wrapped == null && !hasStringKeys(map)) {
+            new JSONObject(map).write(writer, printer, indent);
+            return;
+        }
+        // like a JSONObject, a map with a single entry is written on one line
+        final boolean multiline = printer != null && countValues(map, 2) > 1;
+        final int newIndent = multiline ? indent + printer.getIndentWidth() : indent;
+        boolean needsComma = false;
+        writer.write('{');
+        for (final Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new NullPointerException("Null key.");
+            }
+            final Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            if (needsComma) {
+                writer.write(',');
+            }
+            if (multiline) {
+                printer.newline(writer, newIndent);
+            }
+            final String key = String.valueOf(entry.getKey());
+            QuotedKeyCache.writeKey(writer, key);
+            if (printer != null) {
+                printer.afterColon(writer);
+            }
             try {
-                o = ((JSONString) value).toJSONString();
+                Object known = wrapped != null ? wrapped.get(key) : null;
+                if (known != null) {
+                    writeValue(writer, known, printer, newIndent);
+                } else {
+                    writeWrapped(writer, value, printer, newIndent);
+                }
             } catch (Exception e) {
-                throw new JSONException(e);
+                throw new JSONException("Unable to write JSONObject value for key: " + key, e);
             }
-            writer.write(o != null ? o.toString() : quote(value.toString()));
-        } else if (value instanceof String) {
-            // assuming most values are Strings, so testing it early
-            quote(value.toString(), writer);
-            return writer;
-        } else if (value instanceof Number) {
-            // not all Numbers may match actual JSON Numbers. i.e. fractions or Imaginary
-            final String numberAsString = numberToString((Number) value);
-            if (NUMBER_PATTERN.matcher(numberAsString).matches()) {
-                writer.write(numberAsString);
-            } else {
-                // The Number value is not a valid JSON number.
-                // Instead we will quote it as a string
-                quote(numberAsString, writer);
-            }
-        } else if (value instanceof Boolean) {
-            writer.write(value.toString());
-        } else if (value instanceof Enum<?>) {
-            writer.write(quote(((Enum<?>) value).name()));
-        } else if (value instanceof JSONObject) {
-            ((JSONObject) value).write(writer, indentFactor, indent);
-        } else if (value instanceof JSONArray) {
-            ((JSONArray) value).write(writer, indentFactor, indent);
-        } else if (value instanceof Map<?, ?> map) {
-            new JSONObject(map).write(writer, indentFactor, indent);
-        } else if (value instanceof Collection<?> coll) {
-            new JSONArray(coll).write(writer, indentFactor, indent);
-        } else if (value.getClass().isArray()) {
-            new JSONArray(value).write(writer, indentFactor, indent);
-        } else {
-            quote(value.toString(), writer);
+            needsComma = true;
         }
-        return writer;
+        if (multiline) {
+            printer.newline(writer, indent);
+        }
+        writer.write('}');
+    }
+
+    /**
+     * Checks if all the keys of a map are Strings, which can't collide once
+     * converted with {@link String#valueOf(Object)}.
+     *
+     * @throws NullPointerException If the map has a null key.
+     */
+    static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (key == null) {
+                throw new NullPointerException("Null key.");
+            }
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+        /**
+     * Counts the non-null values of a map, up to a limit.
+     */
+    private static int countValues(Map<?, ?> map, int limit) {
+        int count = 0;
+        for (Object value : map.values()) {
+            if (value != null && ++count == limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the elements of a Collection as the JSONArray made from it would
+     * write them, without making the JSONArray: the elements are written as
+     * {@link #wrap(Object)} would wrap them.
+     *
+     * @param writer   Writes the serialized JSON
+     * @param elements The elements to write.
+     * @param printer  The whitespace style, or null for compact text.
+     * @param indent   The indentation of the elements, in indentation characters.
+     */
+    private static void writeElements(Writer writer, Collection<?> elements,
+                                      JSONPrettyPrinter printer, int indent) throws JSONException, IOException {
+        // like a JSONArray, a single element is written on one line
+        final boolean multiline = printer != null && elements.size() > 1;
+        final int newIndent = multiline ? indent + printer.getIndentWidth() : indent;
+        int i = 0;
+        writer.write('[');
+        for (Object element : elements) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (multiline) {
+                printer.newline(writer, newIndent);
+            }
+            try {
+                writeWrapped(writer, element, printer, newIndent);
+            } catch (Exception e) {
+                throw new JSONException("Unable to write JSONArray value at index: " + i, e);
+            }
+            i += 1;
+        }
+        if (multiline) {
+            printer.newline(writer, indent);
+        }
+        writer.write(']');
     }
 
-    static void indent(Writer writer, int indent) throws IOException {
-        for (int i = 0; i < indent; i += 1) {
-            writer.write(' ');
+    /**
+     * Write a value held by a Map, Collection or array as the value
+     * {@link #wrap(Object)} makes of it would be written. Maps, Collections
+     * and arrays are written directly, beans are wrapped first.
+     */
+    private static void writeWrapped(Writer writer, Object value,
+                                     JSONPrettyPrinter printer, int indent) throws JSONException, IOException {
+        if (NULL.equals(value)) {
+            writeValue(writer, NULL, printer, indent);
+            return;
+        }
+        testValidity(value);
+        final ValueKind kind = ValueKind.ofWrapped(value);
+        if (kind == ValueKind.BEAN || kind == ValueKind.STRINGIFIED) {
+            writeValue(writer, wrap(value, kind, null), printer, indent);
+        } else {
+            writeValue(writer, value, printer, indent);
         }
     }
 
@@ -2543,51 +3502,88 @@ public class JSONObject {
      */
     public Writer write(Writer writer, int indentFactor, int indent)
             throws JSONException {
+        return write(writer, JSONPrettyPrinter.of(indentFactor, indent), indent);
+    }
+
+    /**
+     * Write the contents of the JSONObject as JSON text to a writer, in the
+     * whitespace style of a {@link JSONPrettyPrinter}. Like
+     * {@link #write(Writer, int, int)}, an object with only one key is output
+     * on a single line.
+     * <p><b>
+     * Warning: This method assumes that the data structure is acyclical.
+     * </b>
+     *
+     * @param writer  Writes the serialized JSON
+     * @param printer The whitespace style.
+     * @return The writer.
+     * @throws JSONException if a called function has an error or a write error
+     *                       occurs
+     */
+    public Writer write(Writer writer, JSONPrettyPrinter printer) throws JSONException {
+        return write(writer, printer, 0);
+    }
+
+    /**
+     * Write the contents of the JSONObject as JSON text to a writer.
+     *
+     * @param writer  Writes the serialized JSON
+     * @param printer The whitespace style, or null for compact text.
+     * @param indent  The indentation of the top level, in indentation characters.
+     * @return The writer.
+     * @throws JSONException if a called function has an error or a write error
+     *                       occurs
+     */
+    Writer write(Writer writer, JSONPrettyPrinter printer, int indent)
+            throws JSONException {
         try {
+            if (printer == null && this.serializedForm != null && this.serializedForm.caching
+                    && this.serializedForm.write(this, writer)) {
+                return writer;
+            }
+            if (this.map instanceof MapView && ((MapView) this.map).write(writer, printer, indent)) {
+                return writer;
+            }
             boolean needsComma = false;
             final int length = length();
             writer.write('{');
 
             if (length == 1) {
-                final Entry<String, ?> entry = entrySet().iterator().next();
+                final Entry<String, ?> entry = entries().iterator().next();
                 final String key = entry.getKey();
-                writer.write(quote(key));
-                writer.write(':');
-                if (indentFactor > 0) {
-                    writer.write(' ');
+                QuotedKeyCache.writeKey(writer, key);
+                if (printer != null) {
+                    printer.afterColon(writer);
                 }
                 try {
-                    writeValue(writer, entry.getValue(), indentFactor, indent);
+                    writeValue(writer, entry.getValue(), printer, indent);
                 } catch (Exception e) {
                     throw new JSONException("Unable to write JSONObject value for key: " + key, e);
                 }
             } else if (length != 0) {
-                final int newIndent = indent + indentFactor;
-                for (final Entry<String, ?> entry : entrySet()) {
+                final int newIndent = printer != null ? indent + printer.getIndentWidth() : 0;
+                for (final Entry<String, ?> entry : entries()) {
                     if (needsComma) {
                         writer.write(',');
                     }
-                    if (indentFactor > 0) {
-                        writer.write('\n');
+                    if (printer != null) {
+                        printer.newline(writer, newIndent);
                     }
-                    indent(writer, newIndent);
                     final String key = entry.getKey();
-                    writer.write(quote(key));
-                    writer.write(':');
-                    if (indentFactor > 0) {
-                        writer.write(' ');
+                    QuotedKeyCache.writeKey(writer, key);
+                    if (printer != null) {
+                        printer.afterColon(writer);
                     }
                     try {
-                        writeValue(writer, entry.getValue(), indentFactor, newIndent);
+                        writeValue(writer, entry.getValue(), printer, newIndent);
                     } catch (Exception e) {
                         throw new JSONException("Unable to write JSONObject value for key: " + key, e);
                     }
                     needsComma = true;
                 }
-                if (indentFactor > 0) {
-                    writer.write('\n');
+                if (printer != null) {
+                    printer.newline(writer, indent);
                 }
-                indent(writer, indent);
             }
             writer.write('}');
             return writer;
@@ -2599,15 +3595,15 @@ public class JSONObject {
     /**
      * Returns a java.util.Map containing all of the entries in this object.
      * If an entry in the object is a JSONArray or JSONObject it will also
-     * be converted.
+     * be converted. The Map of an ordered JSONObject keeps the same order.
      * <p>
      * Warning: This method assumes that the data structure is acyclical.
      *
      * @return a java.util.Map containing the entries of this object
      */
     public Map<String, Object> toMap() {
-        Map<String, Object> results = new HashMap<>();
-        for (Entry<String, Object> entry : entrySet()) {
+        Map<String, Object> results = isOrdered() ? new LinkedHashMap<>() : new HashMap<>();
+        for (Entry<String, Object> entry : entries()) {
             Object value;
             if (entry.getValue() == null || NULL.equals(entry.getValue())) {
                 value = null;
@@ -2623,6 +3619,42 @@ public class JSONObject {
         return results;
     }
 
+    /**
+     * Create a bean from the entries of this object. The bean can be:
+     * <ul>
+     * <li>a record, created with its canonical constructor from the keys named
+     * after its components,</li>
+     * <li>a public class with a public constructor without parameters, and the
+     * setters of the keys present,</li>
+     * <li>a public class with a public constructor whose parameters are all
+     * named, by {@link JSONPropertyName} or because the class was compiled
+     * with <code>-parameters</code>, and the setters of the other keys
+     * present.</li>
+     * </ul>
+     * Keys follow the naming rules and the {@link JSONPropertyName} and
+     * {@link JSONPropertyIgnore} annotations of {@link #JSONObject(Object)}; a
+     * setter takes the name of its getter unless it is annotated itself. Values
+     * are bound to the generic types of the parameters: JSONObjects to beans
+     * and Maps, JSONArrays to Collections and arrays, and strings and numbers
+     * are converted like {@link #getInt(String)}, {@link #getEnum(Class, String)}
+     * and the other getters do. Keys without a property are ignored, and
+     * missing or null values leave the property unset: null, or zero for a
+     * primitive constructor parameter.
+     * <p>
+     * To bind a JSON text without building the JSONObject first, use
+     * {@link JSONTokener#nextValue(Class)}.
+     *
+     * @param <T>  the type of the bean
+     * @param type the class of the bean
+     * @return the bean
+     * @throws JSONException If a value can't be bound to the type of its
+     *                       property, or if the bean can't be created.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T toBean(Class<T> type) throws JSONException {
+        return (T) ValueBinder.of(type).bind(this);
+    }
+
     /**
      * Create a new JSONException in a common format for incorrect conversions.
      *
@@ -2631,7 +3663,7 @@ public class JSONObject {
      * @param cause     optional cause of the coercion failure
      * @return JSONException that can be thrown.
      */
-    private static JSONException wrongValueFormatException(
+    static JSONException wrongValueFormatException(
             String key,
             String valueType,
             Object value,
@@ -2659,7 +3691,7 @@ public class JSONObject {
      * @param key name of the key
      * @return JSONException that can be thrown.
      */
-    private static JSONException recursivelyDefinedObjectException(String key) {
+    static JSONException recursivelyDefinedObjectException(String key) {
         return new JSONException(
                 "JavaBean object contains recursively defined member variable of key " + quote(key)
         );
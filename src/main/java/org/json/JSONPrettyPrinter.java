@@ -0,0 +1,219 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * The whitespace style of pretty-printed JSON text: the width of each level of
+ * indentation, whether it is made of spaces or tabs, and whether a space
+ * follows the colon after a key. A JSONPrettyPrinter is immutable and can be
+ * shared by any number of writes.
+ * <p>
+ * A line break and the indentation following it are written with a single
+ * bulk write from a precomputed array, rather than one character at a time.
+ * <pre>{@code
+ * String text = jsonObject.toString(JSONPrettyPrinter.tabs().withSpaceAfterColon(false));
+ * }</pre>
+ */
+public final class JSONPrettyPrinter {
+    /**
+     * The number of indentation levels precomputed. Deeper levels take more
+     * than one write.
+     */
+    private static final int PRECOMPUTED_LEVELS = 32;
+
+    /**
+     * Shared printers for the common indent factors used by
+     * {@link JSONObject#toString(int)} and {@link JSONArray#toString(int)}.
+     */
+    private static final JSONPrettyPrinter[] SPACES = new JSONPrettyPrinter[9];
+
+    static {
+        for (int width = 1; width < SPACES.length; width += 1) {
+            SPACES[width] = new JSONPrettyPrinter(width, false, true);
+        }
+    }
+
+    /**
+     * The style of {@link JSONObject#write(Writer, int, int)} with an indent
+     * factor of 0 and a positive indent: no line breaks, no space after the
+     * colons, but the indentation of the top level written before each key or
+     * element and before the closing bracket, as it always was.
+     */
+    private static final JSONPrettyPrinter INLINE = new JSONPrettyPrinter(0, false, false, false);
+
+    private final int indentWidth;
+    private final boolean useTabs;
+    private final boolean spaceAfterColon;
+    private final boolean lineBreaks;
+    /**
+     * A line feed followed by the indentation of {@link #PRECOMPUTED_LEVELS}
+     * levels.
+     */
+    private final char[] newlineAndIndent;
+
+    /**
+     * Create a pretty printer.
+     *
+     * @param indentWidth     The number of indentation characters added for each
+     *                        level of nesting.
+     * @param useTabs         true to indent with tabs, false to indent with spaces.
+     * @param spaceAfterColon true to write a space between a key and its value.
+     * @throws IllegalArgumentException If the indent width is negative.
+     */
+    public JSONPrettyPrinter(int indentWidth, boolean useTabs, boolean spaceAfterColon) {
+        this(indentWidth, useTabs, spaceAfterColon, true);
+    }
+
+    private JSONPrettyPrinter(int indentWidth, boolean useTabs, boolean spaceAfterColon, boolean lineBreaks) {
+        if (indentWidth < 0) {
+            throw new IllegalArgumentException("Negative indent width: " + indentWidth);
+        }
+        this.indentWidth = indentWidth;
+        this.useTabs = useTabs;
+        this.spaceAfterColon = spaceAfterColon;
+        this.lineBreaks = lineBreaks;
+        this.newlineAndIndent = new char[1 + PRECOMPUTED_LEVELS * indentWidth];
+        Arrays.fill(this.newlineAndIndent, useTabs ? '\t' : ' ');
+        this.newlineAndIndent[0] = '\n';
+    }
+
+    /**
+     * Get a pretty printer indenting with spaces, with a space after the colons.
+     * This is the style of {@link JSONObject#toString(int)}.
+     *
+     * @param indentWidth The number of spaces added for each level of nesting.
+     * @return a pretty printer
+     * @throws IllegalArgumentException If the indent width is negative.
+     */
+    public static JSONPrettyPrinter spaces(int indentWidth) {
+        if (indentWidth > 0 && indentWidth < SPACES.length) {
+            return SPACES[indentWidth];
+        }
+        return new JSONPrettyPrinter(indentWidth, false, true);
+    }
+
+    /**
+     * Get the style of {@link JSONObject#write(Writer, int, int)}.
+     *
+     * @param indentFactor The number of spaces added for each level of nesting.
+     * @param indent       The indentation of the top level.
+     * @return a pretty printer, or null for compact text
+     */
+    static JSONPrettyPrinter of(int indentFactor, int indent) {
+        if (indentFactor > 0) {
+            return spaces(indentFactor);
+        }
+        return indent > 0 ? INLINE : null;
+    }
+
+    /**
+     * Get the indent factor of {@link JSONObject#write(Writer, int, int)}
+     * writing in this style, the inverse of {@link #of(int, int)}.
+     *
+     * @return the indent factor, or -1 if this style has none.
+     */
+    int indentFactor() {
+        if (this == INLINE) {
+            return 0;
+        }
+        return this.lineBreaks && !this.useTabs && this.spaceAfterColon && this.indentWidth > 0
+                ? this.indentWidth : -1;
+    }
+
+    /**
+     * Get a pretty printer indenting with one tab for each level of nesting,
+     * with a space after the colons.
+     *
+     * @return a pretty printer
+     */
+    public static JSONPrettyPrinter tabs() {
+        return new JSONPrettyPrinter(1, true, true);
+    }
+
+    /**
+     * Get a pretty printer like this one, with or without a space after the
+     * colons.
+     *
+     * @param spaceAfterColon true to write a space between a key and its value.
+     * @return a pretty printer
+     */
+    public JSONPrettyPrinter withSpaceAfterColon(boolean spaceAfterColon) {
+        if (spaceAfterColon == this.spaceAfterColon) {
+            return this;
+        }
+        return new JSONPrettyPrinter(this.indentWidth, this.useTabs, spaceAfterColon);
+    }
+
+    /**
+     * Get the number of indentation characters added for each level of nesting.
+     *
+     * @return the indent width
+     */
+    public int getIndentWidth() {
+        return this.indentWidth;
+    }
+
+    /**
+     * Get whether the indentation is made of tabs.
+     *
+     * @return true for tabs, false for spaces
+     */
+    public boolean usesTabs() {
+        return this.useTabs;
+    }
+
+    /**
+     * Get whether a space is written between a key and its value.
+     *
+     * @return true if a space follows the colons
+     */
+    public boolean hasSpaceAfterColon() {
+        return this.spaceAfterColon;
+    }
+
+    /**
+     * Writes a line feed followed by an indentation.
+     *
+     * @param writer the writer to write to
+     * @param indent the number of indentation characters
+     * @throws IOException If the writer fails.
+     */
+    void newline(Writer writer, int indent) throws IOException {
+        if (!this.lineBreaks) {
+            for (int i = 0; i < indent; i += 1) {
+                writer.write(' ');
+            }
+            return;
+        }
+        final char[] chars = this.newlineAndIndent;
+        if (indent < chars.length) {
+            writer.write(chars, 0, indent + 1);
+            return;
+        }
+        writer.write(chars, 0, chars.length);
+        indent -= chars.length - 1;
+        while (indent > 0) {
+            int n = Math.min(indent, chars.length - 1);
+            writer.write(chars, 1, n);
+            indent -= n;
+        }
+    }
+
+    /**
+     * Writes the separator following the colon after a key, if any.
+     *
+     * @param writer the writer to write to
+     * @throws IOException If the writer fails.
+     */
+    void afterColon(Writer writer) throws IOException {
+        if (this.spaceAfterColon) {
+            writer.write(' ');
+        }
+    }
+}
@@ -5,6 +5,7 @@ Public Domain.
 */
 
 import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
 import java.lang.annotation.Documented;
@@ -15,10 +16,13 @@ import java.lang.annotation.Target;
  * Use this annotation on a getter method to override the Bean name
  * parser for Bean -&gt; JSONObject mapping. A value set to empty string <code>""</code>
  * will have the Bean parser fall back to the default field name processing.
+ * <p>
+ * On a setter, or on a constructor parameter, it names the key bound to it by
+ * {@link JSONObject#toBean(Class)}.
  */
 @Documented
 @Retention(RUNTIME)
-@Target({METHOD})
+@Target({METHOD, PARAMETER})
 public @interface JSONPropertyName {
     /**
      * The value of the JSON property.
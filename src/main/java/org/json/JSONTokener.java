@@ -47,6 +47,27 @@ public class JSONTokener {
      * the number of characters read in the previous line.
      */
     private long characterPreviousLine;
+    /**
+     * flag to indicate that the parsed JSONObjects keep their keys in source order.
+     */
+    private boolean ordered;
+    /**
+     * canonical instances of short string values, indexed by hash. null when
+     * value deduplication is disabled.
+     */
+    private String[] valueTable;
+    /**
+     * the maximum length of a string value to look up in the value table.
+     */
+    private int valueMaxLength;
+    /**
+     * number of string values found in the value table.
+     */
+    private long valueHits;
+    /**
+     * number of string values looked up but not found in the value table.
+     */
+    private long valueMisses;
 
     public JSONTokener(Reader reader) {
         this.reader = reader.markSupported()
@@ -70,6 +91,74 @@ public class JSONTokener {
         this(new StringReader(source));
     }
 
+    /**
+     * Checks if the JSONObjects parsed by this tokener keep their keys in source order.
+     *
+     * @return true if the parsed JSONObjects are ordered
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Sets whether the JSONObjects parsed by this tokener keep their keys in
+     * source order. Nested JSONObjects are ordered as well.
+     *
+     * @param ordered true to keep the keys in source order
+     * @see JSONObject#JSONObject(boolean)
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Enables or disables the deduplication of string values. When enabled,
+     * quoted string values of at most <code>maxLength</code> characters are
+     * looked up in a table of <code>tableSize</code> slots, and a repeated
+     * value is returned as the same String instance as its previous occurrence
+     * instead of a new copy. This saves memory for documents repeating short,
+     * enum-like values. Keys and longer values are never deduplicated.
+     * <p>
+     * The table is a fixed size cache indexed by hash, so a value only replaces
+     * the one previously held by its slot, and memory stays bounded however many
+     * distinct values are parsed.
+     *
+     * @param tableSize the number of slots of the table, rounded up to a power
+     *                  of two, or 0 to disable deduplication
+     * @param maxLength the maximum length of the values to deduplicate
+     * @throws IllegalArgumentException If tableSize or maxLength is negative
+     */
+    public void setValueDeduplication(int tableSize, int maxLength) {
+        if (tableSize < 0 || maxLength < 0) {
+            throw new IllegalArgumentException("Value deduplication sizes cannot be negative.");
+        }
+        valueTable = tableSize == 0 ? null : new String[tableSize == 1 ? 1 : Integer.highestOneBit(tableSize - 1) << 1];
+        valueMaxLength = maxLength;
+        valueHits = 0;
+        valueMisses = 0;
+    }
+
+    /**
+     * Get the number of string values returned from the deduplication table.
+     *
+     * @return the number of deduplicated values
+     * @see #setValueDeduplication(int, int)
+     */
+    public long getValueDeduplicationHits() {
+        return valueHits;
+    }
+
+    /**
+     * Get the number of string values looked up in the deduplication table
+     * without being found. Values longer than the maximum length are not counted.
+     *
+     * @return the number of values that were not deduplicated
+     * @see #setValueDeduplication(int, int)
+     */
+    public long getValueDeduplicationMisses() {
+        return valueMisses;
+    }
+
     public void back() throws JSONException {
         decrementIndexes();
         usePrevious = true;
@@ -212,8 +301,52 @@ public class JSONTokener {
      * @throws JSONException Unterminated string.
      */
     public String nextString(char quote) throws JSONException {
-        char c;
         StringBuilder sb = new StringBuilder();
+        readString(quote, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Reads a string value like {@link #nextString(char)} does, returning a
+     * canonical instance from the value table if the string was seen before.
+     *
+     * @param quote The quoting character.
+     * @return A String.
+     * @throws JSONException Unterminated string.
+     */
+    private String nextValueString(char quote) throws JSONException {
+        StringBuilder sb = new StringBuilder();
+        readString(quote, sb);
+        int length = sb.length();
+        if (length > valueMaxLength) {
+            return sb.toString();
+        }
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + sb.charAt(i);
+        }
+        int slot = (h ^ (h >>> 16)) & (valueTable.length - 1);
+        String candidate = valueTable[slot];
+        if (candidate != null && candidate.contentEquals(sb)) {
+            valueHits++;
+            return candidate;
+        }
+        valueMisses++;
+        String string = sb.toString();
+        valueTable[slot] = string;
+        return string;
+    }
+
+    /**
+     * Reads the characters up to the next close quote character into a
+     * StringBuilder, processing backslash escapes.
+     *
+     * @param quote The quoting character.
+     * @param sb    receives the characters of the string.
+     * @throws JSONException Unterminated string.
+     */
+    private void readString(char quote, StringBuilder sb) throws JSONException {
+        char c;
         for (; ; ) {
             c = next();
             switch (c) {
@@ -261,7 +394,7 @@ public class JSONTokener {
                     break;
                 default:
                     if (c == quote) {
-                        return sb.toString();
+                        return;
                     }
                     sb.append(c);
             }
@@ -286,10 +419,31 @@ public class JSONTokener {
                 back();
                 yield new JSONArray(this);
             }
+            case '"', '\'' -> valueTable != null ? nextValueString(c) : nextString(c);
             default -> nextSimpleValue(c);
         };
     }
 
+    /**
+     * Get the next value, bound to a type. A JSON object is bound to a bean or
+     * a Map, and a JSON array to a Collection or an array, the way
+     * {@link JSONObject#toBean(Class)} binds the values of a JSONObject, but
+     * straight from the text: the JSONObjects and JSONArrays are not built.
+     * Values of other types, such as strings, numbers, JSONObject and
+     * JSONArray, are converted from the value {@link #nextValue()} returns.
+     *
+     * @param <T>  the type of the value
+     * @param type the class of the value, for example a bean class or
+     *             <code>Item[].class</code>
+     * @return the bound value, or null for a JSON <code>null</code>.
+     * @throws JSONException If syntax error, or if the value can't be bound to
+     *                       the type.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T nextValue(Class<T> type) throws JSONException {
+        return (T) ValueBinder.of(type).read(this);
+    }
+
     Object nextSimpleValue(char c) {
         String string;
         switch (c) {
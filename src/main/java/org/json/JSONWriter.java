@@ -1,5 +1,9 @@
 package org.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 
@@ -30,13 +34,347 @@ Public Domain.
  * <p>
  * The first method called must be <code>array</code> or <code>object</code>.
  * There are no methods for adding commas or colons. JSONWriter adds them for
- * you. Objects and arrays can be nested up to 200 levels deep.
+ * you. Objects and arrays can be nested to any depth. The keys of an object
+ * are not checked for duplicates, so no state is kept for the keys written.
+ * <p>
+ * The text is written as the methods are called, so a JSONWriter can produce
+ * texts of any size without building a JSONObject or JSONArray first. The
+ * <code>value</code> methods for primitive values don't box them.
  * <p>
  * This can sometimes be easier than using a JSONObject to build a string.
  * @author JSON.org
  * @version 2016-08-08
  */
 public class JSONWriter {
+    /**
+     * The comma flag determines if a comma should be output before the next
+     * value.
+     */
+    private boolean comma;
+
+    /**
+     * The current mode. Values:
+     * 'a' (array),
+     * 'd' (done),
+     * 'i' (initial),
+     * 'k' (key),
+     * 'o' (object).
+     */
+    private char mode;
+
+    /**
+     * The nesting stack, true for an object and false for an array. It grows as
+     * needed, so there is no limit to the nesting depth.
+     */
+    private boolean[] stack;
+
+    /**
+     * The stack top index. A value of 0 indicates that the stack is empty.
+     */
+    private int top;
+
+    /**
+     * The writer that will receive the output.
+     */
+    private final Writer writer;
+
+    /**
+     * true if the writer was created by this JSONWriter and should be flushed
+     * when the text is done.
+     */
+    private final boolean ownsWriter;
+
+    /**
+     * Make a fresh JSONWriter. It can be used to build one JSON text.
+     *
+     * @param w the writer receiving the JSON text
+     */
+    public JSONWriter(Writer w) {
+        this(w, false);
+    }
+
+    /**
+     * Make a fresh JSONWriter writing UTF-8 encoded text to a stream. It can be
+     * used to build one JSON text. The stream is flushed when the text is
+     * complete, or by {@link #flush()}.
+     *
+     * @param out the stream receiving the JSON text
+     */
+    public JSONWriter(OutputStream out) {
+        this(new Utf8Writer(out), true);
+    }
+
+    private JSONWriter(Writer w, boolean ownsWriter) {
+        this.comma = false;
+        this.mode = 'i';
+        this.stack = new boolean[16];
+        this.top = 0;
+        this.writer = w;
+        this.ownsWriter = ownsWriter;
+    }
+
+    /**
+     * Begin appending a new array. All values until the balancing
+     * <code>endArray</code> will be appended to this array. The
+     * <code>endArray</code> method must be called to mark the array's end.
+     *
+     * @return this
+     * @throws JSONException If the array is started in the wrong place (for
+     *                       example as a key or after the end of the outermost array or object).
+     */
+    public JSONWriter array() throws JSONException {
+        if (this.mode == 'd' || this.mode == 'o') {
+            throw new JSONException("Misplaced array.");
+        }
+        beforeValue();
+        this.write('[');
+        this.push(false);
+        return this;
+    }
+
+    /**
+     * End an array. This method most be called to balance calls to
+     * <code>array</code>.
+     *
+     * @return this
+     * @throws JSONException If incorrectly nested.
+     */
+    public JSONWriter endArray() throws JSONException {
+        if (this.mode != 'a') {
+            throw new JSONException("Misplaced endArray.");
+        }
+        this.write(']');
+        this.pop(false);
+        return this;
+    }
+
+    /**
+     * Begin appending a new object. All keys and values until the balancing
+     * <code>endObject</code> will be appended to this object. The
+     * <code>endObject</code> method must be called to mark the object's end.
+     *
+     * @return this
+     * @throws JSONException If the object is started in the wrong place (for
+     *                       example as a key or after the end of the outermost array or object).
+     */
+    public JSONWriter object() throws JSONException {
+        if (this.mode == 'd' || this.mode == 'o') {
+            throw new JSONException("Misplaced object.");
+        }
+        beforeValue();
+        this.write('{');
+        this.push(true);
+        return this;
+    }
+
+    /**
+     * End an object. This method most be called to balance calls to
+     * <code>object</code>.
+     *
+     * @return this
+     * @throws JSONException If incorrectly nested.
+     */
+    public JSONWriter endObject() throws JSONException {
+        if (this.mode != 'o') {
+            throw new JSONException("Misplaced endObject.");
+        }
+        this.write('}');
+        this.pop(true);
+        return this;
+    }
+
+    /**
+     * Append a key. The key will be associated with the next value. In an
+     * object, every value must be preceded by a key.
+     *
+     * @param string A key string.
+     * @return this
+     * @throws JSONException If the key is out of place. For example, keys
+     *                       do not belong in arrays or if the key is null.
+     */
+    public JSONWriter key(String string) throws JSONException {
+        if (string == null) {
+            throw new JSONException("Null key.");
+        }
+        if (this.mode != 'o') {
+            throw new JSONException("Misplaced key.");
+        }
+        try {
+            if (this.comma) {
+                this.writer.write(',');
+            }
+            QuotedKeyCache.writeKey(this.writer, string);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        this.comma = false;
+        this.mode = 'k';
+        return this;
+    }
+
+    /**
+     * Append either the value <code>true</code> or the value
+     * <code>false</code>.
+     *
+     * @param b A boolean.
+     * @return this
+     * @throws JSONException if a called function has an error
+     */
+    public JSONWriter value(boolean b) throws JSONException {
+        beforeScalar();
+        this.write(b ? "true" : "false");
+        afterScalar();
+        return this;
+    }
+
+    /**
+     * Append a double value.
+     *
+     * @param d A double.
+     * @return this
+     * @throws JSONException If the number is not finite.
+     */
+    public JSONWriter value(double d) throws JSONException {
+        if (Double.isInfinite(d) || Double.isNaN(d)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+        beforeScalar();
+        this.write(JSONObject.doubleToString(d));
+        afterScalar();
+        return this;
+    }
+
+    /**
+     * Append a long value.
+     *
+     * @param l A long.
+     * @return this
+     * @throws JSONException if a called function has an error
+     */
+    public JSONWriter value(long l) throws JSONException {
+        beforeScalar();
+        try {
+            JSONObject.writeLong(this.writer, l);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        afterScalar();
+        return this;
+    }
+
+    /**
+     * Append an object value.
+     *
+     * @param object The object to append. It can be null, or a Boolean, Number,
+     *               String, JSONObject, or JSONArray, or an object that implements JSONString.
+     * @return this
+     * @throws JSONException If the value is out of sequence.
+     */
+    public JSONWriter value(Object object) throws JSONException {
+        beforeScalar();
+        try {
+            JSONObject.writeValue(this.writer, object, null, 0);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        afterScalar();
+        return this;
+    }
+
+    /**
+     * Flush the underlying writer.
+     *
+     * @throws JSONException If the writer fails.
+     */
+    public void flush() throws JSONException {
+        try {
+            this.writer.flush();
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Checks that a value is allowed in the current mode, and writes the comma
+     * separating it from the previous value in an array.
+     */
+    private void beforeValue() throws JSONException {
+        if (this.comma && this.mode == 'a') {
+            this.write(',');
+        }
+    }
+
+    /**
+     * Like {@link #beforeValue()}, for the values that are neither arrays nor
+     * objects, and so can't be the outermost value.
+     */
+    private void beforeScalar() throws JSONException {
+        if (this.mode != 'a' && this.mode != 'k') {
+            throw new JSONException("Value out of sequence.");
+        }
+        beforeValue();
+    }
+
+    private void afterScalar() {
+        if (this.mode == 'k') {
+            this.mode = 'o';
+        }
+        this.comma = true;
+    }
+
+    /**
+     * Push an array or object scope.
+     *
+     * @param object true for an object, false for an array.
+     */
+    private void push(boolean object) {
+        if (this.top == this.stack.length) {
+            this.stack = Arrays.copyOf(this.stack, this.top << 1);
+        }
+        this.stack[this.top] = object;
+        this.top += 1;
+        this.mode = object ? 'o' : 'a';
+        this.comma = false;
+    }
+
+    /**
+     * Pop an array or object scope.
+     *
+     * @param object true for an object, false for an array.
+     * @throws JSONException If nesting is wrong.
+     */
+    private void pop(boolean object) throws JSONException {
+        if (this.top <= 0 || this.stack[this.top - 1] != object) {
+            throw new JSONException("Nesting error.");
+        }
+        this.top -= 1;
+        if (this.top == 0) {
+            this.mode = 'd';
+            if (this.ownsWriter) {
+                flush();
+            }
+        } else {
+            this.mode = this.stack[this.top - 1] ? 'o' : 'a';
+            this.comma = true;
+        }
+    }
+
+    private void write(char c) throws JSONException {
+        try {
+            this.writer.write(c);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    private void write(String s) throws JSONException {
+        try {
+            this.writer.write(s);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
     /**
      * Make a JSON text of an Object value. If the object has an
      * value.toJSONString() method, then that method will be used to produce the
@@ -78,15 +416,7 @@ public class JSONWriter {
             throw new JSONException("error value");
         }
         if (value instanceof Number) {
-            // not all Numbers may match actual JSON Numbers. i.e. Fractions or Complex
-            final String numberAsString = JSONObject.numberToString((Number) value);
-            if(JSONObject.NUMBER_PATTERN.matcher(numberAsString).matches()) {
-                // Close enough to a JSON number that we will return it unquoted
-                return numberAsString;
-            }
-            // The Number value is not a valid JSON number.
-            // Instead we will quote it as a string
-            return JSONObject.quote(numberAsString);
+            return JSONObject.numberToJSONText((Number) value);
         }
         if (value instanceof Boolean || value instanceof JSONObject
                 || value instanceof JSONArray) {
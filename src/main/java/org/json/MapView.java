@@ -0,0 +1,175 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The map of a JSONObject made by {@link JSONObject#view(Map)}. It reads the
+ * entries of a Map, wrapping a value with {@link JSONObject#wrap(Object)} the
+ * first time it is read, and keeps the wrapped values, so later reads see the
+ * same JSONObjects and JSONArrays, with the changes made to them. The
+ * JSONObject is written from the Map directly, with the wrapped values read so
+ * far.
+ * <p>
+ * Changing the map, or iterating its entries, keys or values, first copies the
+ * entries not read yet, wrapped, after which the view is a plain map.
+ * <p>
+ * A value which {@link JSONObject#wrap(Object)} can't wrap, for example a
+ * bean whose conversion fails, is left out of the keys, the length and the
+ * reads. Counting the entries wraps all the values.
+ * <p>
+ * Reads may happen from several threads, as they can for a JSONObject which
+ * isn't changed: the wrapped values are kept in a ConcurrentHashMap, and when
+ * two threads wrap the same value first, both get the value kept by the first
+ * one to finish.
+ */
+final class MapView extends AbstractMap<String, Object> {
+    /**
+     * The Map read, or null once its entries are copied.
+     */
+    private volatile Map<String, ?> source;
+
+    /**
+     * The wrapped values read so far, or all the entries once they are copied.
+     */
+    private final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<>();
+
+    /**
+     * The number of entries of the Map with a value which wraps to a non-null
+     * value, or -1 if they aren't counted yet.
+     */
+    private volatile int size = -1;
+
+    MapView(Map<String, ?> source) {
+        this.source = source;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Object value = this.values.get(key);
+        Map<String, ?> source = this.source;
+        if (value != null || source == null) {
+            return value;
+        }
+        Object raw = source.get(key);
+        if (raw == null) {
+            return null;
+        }
+        value = wrapValue(raw);
+        if (value == null) {
+            return null;
+        }
+        Object previous = this.values.putIfAbsent((String) key, value);
+        return previous != null ? previous : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        // a value which can't be wrapped is left out, as get and copy leave it out
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        Map<String, ?> source = this.source;
+        if (source == null) {
+            return this.values.size();
+        }
+        int count = this.size;
+        if (count < 0) {
+            // counted once, as the JSONObject asks for its length often; the
+            // values are wrapped to leave out those which can't be, as get and
+            // copy do, and kept for the later reads and writes
+            count = 0;
+            for (String key : source.keySet()) {
+                if (get(key) != null) {
+                    count += 1;
+                }
+            }
+            this.size = count;
+        }
+        return count;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        copy();
+        return this.values.entrySet();
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        copy();
+        return this.values.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        copy();
+        return this.values.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        this.source = null;
+        this.values.clear();
+    }
+
+    /**
+     * Writes the entries of the Map, if they aren't copied yet.
+     *
+     * @param writer  Writes the serialized JSON
+     * @param printer The whitespace style, or null for compact text.
+     * @param indent  The indentation of the map, in indentation characters.
+     * @return false if the entries are copied, and the map is written as any
+     * other.
+     */
+    boolean write(Writer writer, JSONPrettyPrinter printer, int indent) throws JSONException, IOException {
+        Map<String, ?> source = this.source;
+        if (source == null) {
+            return false;
+        }
+        JSONObject.writeMap(writer, source, this.values, printer, indent);
+        return true;
+    }
+
+    /**
+     * Copies the entries not read yet, wrapped, leaving out those with a null
+     * value, or a value which can't be wrapped, as {@link #get(Object)} does.
+     */
+    private void copy() {
+        Map<String, ?> source = this.source;
+        if (source == null) {
+            return;
+        }
+        for (Entry<String, ?> entry : source.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new NullPointerException("Null key.");
+            }
+            final String key = String.valueOf(entry.getKey());
+            if (entry.getValue() != null && !this.values.containsKey(key)) {
+                Object value = wrapValue(entry.getValue());
+                if (value != null) {
+                    this.values.put(key, value);
+                }
+            }
+        }
+        this.source = null;
+    }
+
+    private static Object wrapValue(Object value) {
+        JSONObject.testValidity(value);
+        return JSONObject.wrap(value);
+    }
+}
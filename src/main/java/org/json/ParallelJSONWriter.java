@@ -0,0 +1,245 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes the compact JSON text of large JSONArrays on several threads. The
+ * array is split into segments of consecutive elements, the segments are
+ * written into separate buffers by the tasks of a {@link ForkJoinPool}, and
+ * the buffers are passed on in order to the output as they complete. The text
+ * is the same as the one written by {@link JSONArray#write(Writer)}.
+ * <p>
+ * Only a few segments per thread are in flight at any time, so the memory used
+ * for the buffers is bounded by the size of those segments, not by the size of
+ * the whole text. Arrays shorter than the threshold are written on the calling
+ * thread, as are all arrays when the pool has a single thread.
+ * <p>
+ * The array and the values in it must not be changed while they are written.
+ * <p><b>
+ * Warning: This class assumes that the data structure is acyclical.
+ * </b>
+ */
+public final class ParallelJSONWriter {
+    /**
+     * The default number of elements below which arrays are written on the
+     * calling thread.
+     */
+    public static final int DEFAULT_THRESHOLD = 10000;
+
+    /**
+     * The smallest number of elements in a segment.
+     */
+    private static final int MIN_SEGMENT_LENGTH = 256;
+
+    /**
+     * The largest number of elements in a segment, which bounds the memory
+     * used by the segments in flight.
+     */
+    private static final int MAX_SEGMENT_LENGTH = 8192;
+
+    /**
+     * The number of segments per thread of the pool.
+     */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Create a writer using the common ForkJoinPool and the default threshold.
+     */
+    public ParallelJSONWriter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Create a writer.
+     *
+     * @param pool      The pool running the tasks writing the segments.
+     * @param threshold The number of elements below which arrays are written
+     *                  on the calling thread.
+     */
+    public ParallelJSONWriter(ForkJoinPool pool, int threshold) {
+        if (pool == null) {
+            throw new NullPointerException("Null pool.");
+        }
+        this.pool = pool;
+        this.threshold = Math.max(threshold, 2);
+    }
+
+    /**
+     * Write the compact JSON text of a JSONArray to a writer.
+     *
+     * @param array  The array to write.
+     * @param writer Writes the serialized JSON
+     * @return The writer.
+     * @throws JSONException If the array holds an invalid number, or if the
+     *                       writer fails.
+     */
+    public Writer write(JSONArray array, Writer writer) throws JSONException {
+        if (isSequential(array)) {
+            return array.write(writer);
+        }
+        run(array, false, segments -> {
+            for (Writer segment : segments) {
+                ((StringBuilderWriter) segment).writeTo(writer);
+            }
+        });
+        return writer;
+    }
+
+    /**
+     * Write the compact JSON text of a JSONArray to a stream, encoded as UTF-8.
+     * The stream is flushed, but not closed.
+     *
+     * @param array The array to write.
+     * @param out   the stream receiving the UTF-8 encoded JSON text
+     * @return The stream.
+     * @throws JSONException If the array holds an invalid number, or if the
+     *                       stream fails.
+     */
+    public OutputStream write(JSONArray array, OutputStream out) throws JSONException {
+        if (isSequential(array)) {
+            return array.write(out);
+        }
+        run(array, true, segments -> {
+            for (Writer segment : segments) {
+                ((Utf8Writer) segment).writeTo(out);
+            }
+        });
+        try {
+            out.flush();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return out;
+    }
+
+    /**
+     * Write the compact JSON text of a JSONArray to a channel, such as a
+     * {@link java.nio.channels.FileChannel}, encoded as UTF-8. The segments
+     * which are ready are passed on together with a single gathering write.
+     *
+     * @param array   The array to write.
+     * @param channel the channel receiving the UTF-8 encoded JSON text
+     * @return the number of bytes written.
+     * @throws JSONException If the array holds an invalid number, or if the
+     *                       channel fails.
+     */
+    public long write(JSONArray array, GatheringByteChannel channel) throws JSONException {
+        long[] written = new long[1];
+        if (isSequential(array)) {
+            Utf8Writer buffer = new Utf8Writer(Math.max(array.length() * 2, 16));
+            array.write(buffer, null, 0);
+            try {
+                writeFully(channel, new ByteBuffer[]{buffer.toByteBuffer()}, written);
+            } catch (IOException exception) {
+                throw new JSONException(exception);
+            }
+            return written[0];
+        }
+        run(array, true, segments -> {
+            ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+            for (int i = 0; i < buffers.length; i += 1) {
+                buffers[i] = ((Utf8Writer) segments.get(i)).toByteBuffer();
+            }
+            writeFully(channel, buffers, written);
+        });
+        return written[0];
+    }
+
+    private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers, long[] written)
+            throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            written[0] += channel.write(buffers);
+        }
+    }
+
+    private boolean isSequential(JSONArray array) {
+        return array.length() < this.threshold || this.pool.getParallelism() < 2;
+    }
+
+    /**
+     * Receives the written segments, in order.
+     */
+    private interface SegmentSink {
+        void accept(List<Writer> segments) throws IOException;
+    }
+
+    /**
+     * Writes the segments of an array on the pool, and passes them to the sink
+     * in order, together with the following segments that are already done.
+     */
+    private void run(JSONArray array, boolean utf8, SegmentSink sink) throws JSONException {
+        final int length = array.length();
+        final int parallelism = this.pool.getParallelism();
+        final int segmentLength = Math.min(MAX_SEGMENT_LENGTH, Math.max(MIN_SEGMENT_LENGTH,
+                (length + parallelism * SEGMENTS_PER_THREAD - 1) / (parallelism * SEGMENTS_PER_THREAD)));
+        final int window = parallelism * 2;
+        ArrayDeque<ForkJoinTask<Writer>> inFlight = new ArrayDeque<>(window);
+        int next = 0;
+        try {
+            while (next < length || !inFlight.isEmpty()) {
+                while (next < length && inFlight.size() < window) {
+                    final int from = next;
+                    final int to = Math.min(length, from + segmentLength);
+                    inFlight.add(this.pool.submit(() -> writeSegment(array, from, to, utf8)));
+                    next = to;
+                }
+                List<Writer> ready = new ArrayList<>();
+                ready.add(inFlight.poll().join());
+                while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                    ready.add(inFlight.poll().join());
+                }
+                sink.accept(ready);
+            }
+        } catch (IOException | CancellationException exception) {
+            throw new JSONException(exception);
+        } finally {
+            for (ForkJoinTask<Writer> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the elements of a segment, preceded by the opening bracket or the
+     * comma separating it from the previous segment, and followed by the
+     * closing bracket for the last segment.
+     */
+    private static Writer writeSegment(JSONArray array, int from, int to, boolean utf8)
+            throws JSONException, IOException {
+        int initialSize = Math.max((to - from) << 4, 16);
+        Writer writer = utf8 ? new Utf8Writer(initialSize) : new StringBuilderWriter(initialSize);
+        writer.write(from == 0 ? '[' : ',');
+        for (int i = from; i < to; i += 1) {
+            if (i > from) {
+                writer.write(',');
+            }
+            try {
+                JSONObject.writeValue(writer, array.opt(i), null, 0);
+            } catch (Exception e) {
+                throw new JSONException("Unable to write JSONArray value at index: " + i, e);
+            }
+        }
+        if (to == array.length()) {
+            writer.write(']');
+        }
+        return writer;
+    }
+}
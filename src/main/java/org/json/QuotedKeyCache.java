@@ -0,0 +1,133 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of the quoted form of JSONObject keys, shared by all writes. The same
+ * keys are typically written over and over again, for example for every row of
+ * a large result, so their quoted text, followed by the colon, is kept and
+ * emitted with a single bulk write. The UTF-8 bytes of a key are encoded the
+ * first time it is written to a {@link Utf8Writer}.
+ * <p>
+ * The cache is bounded: long keys are never cached, and once the cache holds
+ * too many keys, new keys are written without being cached. Every
+ * {@link #SWEEP_INTERVAL} such misses, the keys not written since the previous
+ * sweep are dropped, so the keys in use stay cached and the keys in use later
+ * get cached, while a stream of keys written only once doesn't churn the
+ * cache.
+ */
+final class QuotedKeyCache {
+    /**
+     * The maximum number of cached keys.
+     */
+    private static final int MAX_ENTRIES = 4096;
+    /**
+     * The maximum length of a cached key.
+     */
+    private static final int MAX_KEY_LENGTH = 64;
+    /**
+     * The number of keys missed while the cache is full between two sweeps.
+     */
+    private static final int SWEEP_INTERVAL = 256;
+
+    private static final ConcurrentHashMap<String, QuotedKey> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * The keys missed while the cache is full.
+     */
+    private static final AtomicInteger MISSES = new AtomicInteger();
+
+    private QuotedKeyCache() {
+    }
+
+    /**
+     * A quoted key followed by a colon, with its UTF-8 form once needed.
+     */
+    private static final class QuotedKey {
+        final char[] chars;
+
+        /**
+         * The UTF-8 form, or null if it isn't encoded yet.
+         */
+        private volatile byte[] utf8;
+
+        /**
+         * true if the key was written since the last sweep. Races are
+         * harmless: at worst a key in use is dropped and cached again.
+         */
+        boolean used;
+
+        QuotedKey(String key) {
+            chars = (JSONObject.quote(key) + ':').toCharArray();
+        }
+
+        byte[] utf8() {
+            byte[] bytes = this.utf8;
+            if (bytes == null) {
+                bytes = new String(this.chars).getBytes(StandardCharsets.UTF_8);
+                this.utf8 = bytes;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Writes a quoted key followed by a colon.
+     *
+     * @param writer the writer to write to
+     * @param key    the key to write
+     * @throws IOException If the writer fails.
+     */
+    static void writeKey(Writer writer, String key) throws IOException {
+        QuotedKey quoted = CACHE.get(key);
+        if (quoted == null) {
+            if (key.length() > MAX_KEY_LENGTH || !hasRoom()) {
+                JSONObject.quote(key, writer);
+                writer.write(':');
+                return;
+            }
+            quoted = new QuotedKey(key);
+            CACHE.put(key, quoted);
+        } else if (!quoted.used) {
+            // only written once per sweep, so the hits don't contend on it
+            quoted.used = true;
+        }
+        if (writer instanceof Utf8Writer) {
+            byte[] utf8 = quoted.utf8();
+            ((Utf8Writer) writer).writeEncoded(utf8, 0, utf8.length);
+        } else {
+            writer.write(quoted.chars, 0, quoted.chars.length);
+        }
+    }
+
+    /**
+     * Checks if a missed key can be cached, sweeping the cache every
+     * {@link #SWEEP_INTERVAL} misses while it is full.
+     */
+    private static boolean hasRoom() {
+        if (CACHE.size() < MAX_ENTRIES) {
+            return true;
+        }
+        if (MISSES.incrementAndGet() % SWEEP_INTERVAL != 0) {
+            return false;
+        }
+        for (Iterator<QuotedKey> it = CACHE.values().iterator(); it.hasNext(); ) {
+            QuotedKey quoted = it.next();
+            if (quoted.used) {
+                quoted.used = false;
+            } else {
+                it.remove();
+            }
+        }
+        return CACHE.size() < MAX_ENTRIES;
+    }
+}
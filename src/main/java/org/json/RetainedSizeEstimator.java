@@ -0,0 +1,192 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Estimates the number of heap bytes retained by a tree of JSONObjects and
+ * JSONArrays, for weight based cache eviction. The estimate adds up the
+ * containers, their maps and lists, and the leaf values, using the object
+ * layout of the running JVM (compressed references, header size and object
+ * alignment).
+ * <p>
+ * This is an estimate: the capacity of maps and lists is derived from their
+ * size, values shared with the JVM caches (Booleans, NULL, small boxed
+ * integers) are not counted, and values of other types only count as an
+ * empty object. Values reachable several times in the tree are counted once.
+ */
+final class RetainedSizeEstimator {
+    private static final boolean COMPRESSED_OOPS;
+    private static final boolean COMPRESSED_CLASS_POINTERS;
+    private static final int ALIGNMENT;
+
+    static {
+        boolean compressedOops = true;
+        boolean compressedClassPointers = true;
+        int alignment = 8;
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            compressedOops = Boolean.parseBoolean(hotSpot.getVMOption("UseCompressedOops").getValue());
+            compressedClassPointers = Boolean.parseBoolean(hotSpot.getVMOption("UseCompressedClassPointers").getValue());
+            alignment = Integer.parseInt(hotSpot.getVMOption("ObjectAlignmentInBytes").getValue());
+        } catch (Throwable ignore) {
+            // not a HotSpot JVM, or the management modules are missing:
+            // assume the defaults of a 64-bit JVM with a heap below 32GB
+        }
+        COMPRESSED_OOPS = compressedOops;
+        COMPRESSED_CLASS_POINTERS = compressedClassPointers;
+        ALIGNMENT = alignment;
+    }
+
+    private static final int REFERENCE = COMPRESSED_OOPS ? 4 : 8;
+    private static final int HEADER = COMPRESSED_CLASS_POINTERS ? 12 : 16;
+    private static final int ARRAY_HEADER = COMPRESSED_CLASS_POINTERS ? 16 : 24;
+
+    // shallow sizes of the types found in JSON trees
+    private static final long CONTAINER = align(HEADER + REFERENCE);
+    private static final long HASH_MAP = align(HEADER + 4 * REFERENCE + 3 * 4 + 4);
+    private static final long HASH_MAP_NODE = align(HEADER + 4 + 3 * REFERENCE);
+    private static final long CONCURRENT_HASH_MAP = align(HEADER + 6 * REFERENCE + 8 + 3 * 4);
+    private static final long ORDERED_MAP = align(HEADER + 4 * REFERENCE + 3 * 4);
+    private static final long ARRAY_LIST = align(HEADER + 2 * 4 + REFERENCE);
+    private static final long STRING = align(HEADER + REFERENCE + 4 + 2);
+    private static final long BOXED_INT = align(HEADER + 4);
+    private static final long BOXED_LONG = align(HEADER + 8);
+    private static final long BIG_INTEGER = align(HEADER + 5 * 4 + REFERENCE);
+    private static final long BIG_DECIMAL = align(HEADER + 2 * REFERENCE + 2 * 4 + 8);
+    private static final long LONG_ADDER = align(HEADER + REFERENCE + 8 + 4);
+    private static final long OBJECT = align(HEADER);
+
+    private RetainedSizeEstimator() {
+    }
+
+    /**
+     * Estimates the bytes retained by a value and everything reachable from it
+     * through JSONObjects and JSONArrays. The tree is walked without recursion.
+     *
+     * @param root the value to estimate
+     * @return the estimated number of bytes
+     */
+    static long estimate(Object root) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long total = 0;
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            if (isShared(value) || !seen.add(value)) {
+                continue;
+            }
+            if (value instanceof JSONObject) {
+                JSONObject jo = (JSONObject) value;
+                total += CONTAINER + mapSize(jo.getMapType(), jo.length());
+                for (Map.Entry<String, Object> entry : jo.entries()) {
+                    pending.push(entry.getKey());
+                    pending.push(entry.getValue());
+                }
+            } else if (value instanceof JSONArray) {
+                JSONArray ja = (JSONArray) value;
+                total += CONTAINER + ARRAY_LIST + array(REFERENCE, ja.length());
+                for (Object element : ja) {
+                    if (element != null) {
+                        pending.push(element);
+                    }
+                }
+            } else {
+                total += leafSize(value);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Values owned by the JVM or the library rather than by the tree.
+     */
+    private static boolean isShared(Object value) {
+        if (value == null || value == JSONObject.NULL || value instanceof Boolean) {
+            return true;
+        }
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            // Integer.valueOf and its siblings cache -128..127
+            long l = ((Number) value).longValue();
+            return l >= -128 && l <= 127;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static long mapSize(Class<? extends Map> type, int size) {
+        if (type == InsertionOrderedMap.class) {
+            int capacity = Math.max(8, tableSize(size));
+            return ORDERED_MAP + 2 * array(REFERENCE, capacity) + array(4, 2L * capacity);
+        }
+        long tableAndNodes = size == 0 ? 0 : array(REFERENCE, tableSize((int) (size / 0.75f) + 1)) + size * HASH_MAP_NODE;
+        return (type == ConcurrentHashMap.class ? CONCURRENT_HASH_MAP : HASH_MAP) + tableAndNodes;
+    }
+
+    private static long leafSize(Object value) {
+        if (value instanceof String) {
+            String s = (String) value;
+            return STRING + array(isLatin1(s) ? 1 : 2, s.length());
+        }
+        if (value instanceof Integer || value instanceof Float
+                || value instanceof Short || value instanceof Byte || value instanceof Character) {
+            return BOXED_INT;
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return BOXED_LONG;
+        }
+        if (value instanceof BigInteger) {
+            return bigIntegerSize((BigInteger) value);
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal bd = (BigDecimal) value;
+            // the unscaled value is only kept as a BigInteger when it doesn't fit a long
+            return bd.precision() > 18 ? BIG_DECIMAL + bigIntegerSize(bd.unscaledValue()) : BIG_DECIMAL;
+        }
+        if (value instanceof LongAdder) {
+            return LONG_ADDER;
+        }
+        return OBJECT;
+    }
+
+    private static long bigIntegerSize(BigInteger value) {
+        return BIG_INTEGER + array(4, (value.bitLength() + 31) >>> 5);
+    }
+
+    private static boolean isLatin1(String s) {
+        for (int i = 0, length = s.length(); i < length; i++) {
+            if (s.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int tableSize(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private static long array(int elementSize, long length) {
+        return align(ARRAY_HEADER + elementSize * length);
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
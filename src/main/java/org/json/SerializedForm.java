@@ -0,0 +1,238 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * The cached compact JSON text of a JSONObject or JSONArray, see
+ * {@link JSONObject#setCachingSerializedForm(boolean)}, and the links needed to
+ * drop it when the container or one of the containers nested in it changes.
+ * <p>
+ * Every container written while building a cached text gets a SerializedForm,
+ * even if it doesn't cache its own text, holding weak references to the
+ * containers it was written into. A change of a container drops its text and,
+ * following those references, the texts of all the containers it was written
+ * into, up to the roots. The references are weak so a shared sub-document
+ * doesn't keep the documents it was written into alive.
+ * <p>
+ * A text is only cached when every value in the tree is a JSONObject,
+ * JSONArray, or an immutable value: a String, Boolean, Character, Enum, NULL or
+ * one of the standard immutable Numbers. Changes of other values, such as a Map
+ * or a {@link java.util.concurrent.atomic.LongAdder}, can't be detected, so
+ * trees holding them are written as usual.
+ */
+final class SerializedForm {
+    /**
+     * true if the container caches its own text, false if the form only links
+     * the container to the cached containers it was written into.
+     */
+    volatile boolean caching;
+
+    /**
+     * The compact text encoded as UTF-8, or null if it isn't built yet.
+     */
+    private volatile byte[] utf8;
+
+    /**
+     * The compact text, or null if it isn't built yet.
+     */
+    private volatile String text;
+
+    /**
+     * true if the tree holds a value whose changes can't be detected. Reset by
+     * the next change of the tree.
+     */
+    private volatile boolean uncacheable;
+
+    /**
+     * The forms of the containers this container was written into, or null.
+     */
+    private ArrayList<WeakReference<SerializedForm>> dependents;
+
+    /**
+     * Writes the cached text of a container, building it first if needed.
+     *
+     * @param container the JSONObject or JSONArray owning this form
+     * @param writer    the writer to write to
+     * @return false if the text can't be cached and the container has to be
+     * written as usual.
+     * @throws JSONException If the container holds an invalid number.
+     * @throws IOException   If the writer fails.
+     */
+    boolean write(Object container, Writer writer) throws JSONException, IOException {
+        if (this.uncacheable) {
+            return false;
+        }
+        if (writer instanceof Utf8Writer) {
+            byte[] bytes = this.utf8;
+            if (bytes == null) {
+                Utf8Writer buffer = new Utf8Writer();
+                if (!build(container, buffer)) {
+                    return false;
+                }
+                bytes = buffer.toByteArray();
+                this.utf8 = bytes;
+            }
+            ((Utf8Writer) writer).writeEncoded(bytes, 0, bytes.length);
+        } else {
+            String string = this.text;
+            if (string == null) {
+                Writer buffer = new StringBuilderWriter();
+                if (!build(container, buffer)) {
+                    return false;
+                }
+                string = buffer.toString();
+                this.text = string;
+            }
+            writer.write(string);
+        }
+        return true;
+    }
+
+    private boolean build(Object container, Writer writer) throws JSONException, IOException {
+        boolean built = container instanceof JSONObject
+                ? writeTracked((JSONObject) container, this, writer)
+                : writeTracked((JSONArray) container, this, writer);
+        if (!built) {
+            this.uncacheable = true;
+        }
+        return built;
+    }
+
+    /**
+     * Writes the compact text of a JSONObject, linking the containers in it to
+     * the form of the JSONObject.
+     */
+    private static boolean writeTracked(JSONObject jo, SerializedForm form, Writer writer)
+            throws JSONException, IOException {
+        boolean needsComma = false;
+        writer.write('{');
+        for (final Map.Entry<String, Object> entry : jo.entries()) {
+            if (needsComma) {
+                writer.write(',');
+            }
+            QuotedKeyCache.writeKey(writer, entry.getKey());
+            if (!writeTracked(entry.getValue(), form, writer)) {
+                return false;
+            }
+            needsComma = true;
+        }
+        writer.write('}');
+        return true;
+    }
+
+    /**
+     * Writes the compact text of a JSONArray, linking the containers in it to
+     * the form of the JSONArray.
+     */
+    private static boolean writeTracked(JSONArray ja, SerializedForm form, Writer writer)
+            throws JSONException, IOException {
+        writer.write('[');
+        for (int i = 0, length = ja.length(); i < length; i += 1) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (!writeTracked(ja.opt(i), form, writer)) {
+                return false;
+            }
+        }
+        writer.write(']');
+        return true;
+    }
+
+    private static boolean writeTracked(Object value, SerializedForm parent, Writer writer)
+            throws JSONException, IOException {
+        if (value instanceof ConcurrentJSONObject) {
+            return false;
+        }
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+            SerializedForm form = value instanceof JSONObject
+                    ? ((JSONObject) value).serializedForm()
+                    : ((JSONArray) value).serializedForm();
+            form.addDependent(parent);
+            if (form.caching) {
+                return form.write(value, writer);
+            }
+            return value instanceof JSONObject
+                    ? writeTracked((JSONObject) value, form, writer)
+                    : writeTracked((JSONArray) value, form, writer);
+        }
+        if (!isImmutable(value)) {
+            return false;
+        }
+        JSONObject.writeValue(writer, value, null, 0);
+        return true;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value == JSONObject.NULL
+                || value instanceof String || value instanceof Boolean
+                || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Float
+                || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger || value instanceof BigDecimal
+                || value instanceof Character || value instanceof Enum;
+    }
+
+    /**
+     * Links a container to this one. Synchronized, as the same container can
+     * be written by several threads, for example by a {@link ParallelJSONWriter}.
+     */
+    private synchronized void addDependent(SerializedForm parent) {
+        if (this.dependents == null) {
+            this.dependents = new ArrayList<>(2);
+        } else {
+            // drop the references cleared by the garbage collector on the way
+            for (int i = this.dependents.size() - 1; i >= 0; i--) {
+                SerializedForm dependent = this.dependents.get(i).get();
+                if (dependent == parent) {
+                    return;
+                }
+                if (dependent == null) {
+                    this.dependents.remove(i);
+                }
+            }
+        }
+        this.dependents.add(new WeakReference<>(parent));
+    }
+
+    /**
+     * Drops the cached text of this form and of all the forms depending on it.
+     * The dependents are followed without recursion.
+     */
+    void invalidate() {
+        if (this.utf8 == null && this.text == null && !this.uncacheable && this.dependents == null) {
+            return;
+        }
+        ArrayDeque<SerializedForm> pending = new ArrayDeque<>();
+        SerializedForm form = this;
+        while (form != null) {
+            form.utf8 = null;
+            form.text = null;
+            form.uncacheable = false;
+            synchronized (form) {
+                if (form.dependents != null) {
+                    for (WeakReference<SerializedForm> reference : form.dependents) {
+                        SerializedForm dependent = reference.get();
+                        if (dependent != null) {
+                            pending.push(dependent);
+                        }
+                    }
+                    // the dependents link themselves again when they are rebuilt
+                    form.dependents = null;
+                }
+            }
+            form = pending.poll();
+        }
+    }
+}
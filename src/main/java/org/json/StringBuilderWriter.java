@@ -1,5 +1,6 @@
 package org.json;
 
+import java.io.IOException;
 import java.io.Writer;
 
 /**
@@ -81,6 +82,28 @@ public class StringBuilderWriter extends Writer {
         return builder.toString();
     }
 
+    /**
+     * Writes the chars collected so far to another writer, without making a
+     * String of them: they are appended to the builder of another
+     * StringBuilderWriter, or else passed on in chunks.
+     *
+     * @param writer the writer receiving the chars
+     * @throws IOException If the writer fails.
+     */
+    void writeTo(Writer writer) throws IOException {
+        if (writer instanceof StringBuilderWriter) {
+            ((StringBuilderWriter) writer).builder.append(builder);
+            return;
+        }
+        final int length = builder.length();
+        final char[] chunk = new char[Math.min(length, 8192)];
+        for (int start = 0; start < length; start += chunk.length) {
+            int end = Math.min(start + chunk.length, length);
+            builder.getChars(start, end, chunk, 0);
+            writer.write(chunk, 0, end - start);
+        }
+    }
+
     @Override
     public void flush() {
     }
@@ -0,0 +1,392 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@link Writer} encoding the characters written to it as UTF-8 bytes
+ * directly, without going through a {@link java.nio.charset.CharsetEncoder}.
+ * Runs of ASCII characters, which make up most JSON text, are copied with a
+ * single bounds check per run.
+ * <p>
+ * The bytes are either collected in a growable array, see {@link #toByteArray()},
+ * or buffered and passed on to an {@link OutputStream} or a {@link ByteBuffer}.
+ * In the latter case {@link #flush()} must be called to pass on the last bytes.
+ * <p>
+ * Unpaired surrogate characters are encoded as <code>'?'</code>, like
+ * {@link String#getBytes(java.nio.charset.Charset)} does.
+ */
+public class Utf8Writer extends Writer {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final ByteBuffer target;
+    private byte[] buf;
+    private int count;
+    /**
+     * A high surrogate written as the last character, waiting for its low surrogate.
+     */
+    private char pendingHighSurrogate;
+
+    /**
+     * Create a new UTF-8 writer collecting the bytes in a growable array with
+     * the default initial size.
+     */
+    public Utf8Writer() {
+        this(256);
+    }
+
+    /**
+     * Create a new UTF-8 writer collecting the bytes in a growable array. The
+     * array only grows when more than <code>initialSize</code> bytes are
+     * written, so a size computed with {@link JSONObject#serializedUtf8Length()}
+     * is never exceeded.
+     *
+     * @param initialSize The number of bytes that will fit into the array before
+     *                    it is automatically expanded
+     * @throws IllegalArgumentException If {@code initialSize} is negative
+     */
+    public Utf8Writer(int initialSize) {
+        if (initialSize < 0) {
+            throw new IllegalArgumentException("Negative initial size: " + initialSize);
+        }
+        out = null;
+        target = null;
+        buf = new byte[Math.max(initialSize, 4)];
+    }
+
+    /**
+     * Create a new UTF-8 writer passing the bytes on to an OutputStream.
+     *
+     * @param out The stream receiving the bytes.
+     */
+    public Utf8Writer(OutputStream out) {
+        this.out = out;
+        target = null;
+        buf = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Create a new UTF-8 writer putting the bytes into a ByteBuffer. An
+     * IOException is thrown when the ByteBuffer has no room left.
+     *
+     * @param target The buffer receiving the bytes.
+     */
+    public Utf8Writer(ByteBuffer target) {
+        out = null;
+        this.target = target;
+        buf = new byte[Math.min(DEFAULT_BUFFER_SIZE, Math.max(target.remaining(), 4))];
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (c < 0x80 && pendingHighSurrogate == 0) {
+            if (count == buf.length) {
+                makeRoom(1);
+            }
+            buf[count++] = (byte) c;
+        } else {
+            int room = room((char) c);
+            if (count + room > buf.length) {
+                makeRoom(room);
+            }
+            encode((char) c);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int offset, int length) throws IOException {
+        if ((offset < 0) || (offset > cbuf.length) || (length < 0) ||
+                ((offset + length) > cbuf.length) || ((offset + length) < 0)) {
+            throw new IndexOutOfBoundsException();
+        }
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            if (pendingHighSurrogate == 0) {
+                if (count == buf.length) {
+                    makeRoom(Math.min(end - i, buf.length));
+                }
+                // copy the ASCII run that fits in the buffer
+                byte[] b = buf;
+                int n = count;
+                int limit = Math.min(end, i + b.length - n);
+                char c;
+                while (i < limit && (c = cbuf[i]) < 0x80) {
+                    b[n++] = (byte) c;
+                    i++;
+                }
+                count = n;
+                if (i == end || cbuf[i] < 0x80) {
+                    // done, or the buffer is full
+                    continue;
+                }
+            }
+            char c = cbuf[i++];
+            int room = room(c);
+            if (count + room > buf.length) {
+                makeRoom(room);
+            }
+            encode(c);
+        }
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int offset, int length) throws IOException {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            if (pendingHighSurrogate == 0) {
+                if (count == buf.length) {
+                    makeRoom(Math.min(end - i, buf.length));
+                }
+                // copy the ASCII run that fits in the buffer
+                byte[] b = buf;
+                int n = count;
+                int limit = Math.min(end, i + b.length - n);
+                char c;
+                while (i < limit && (c = str.charAt(i)) < 0x80) {
+                    b[n++] = (byte) c;
+                    i++;
+                }
+                count = n;
+                if (i == end || str.charAt(i) < 0x80) {
+                    // done, or the buffer is full
+                    continue;
+                }
+            }
+            char c = str.charAt(i++);
+            int room = room(c);
+            if (count + room > buf.length) {
+                makeRoom(room);
+            }
+            encode(c);
+        }
+    }
+
+    @Override
+    public Utf8Writer append(CharSequence csq) throws IOException {
+        write(String.valueOf(csq));
+        return this;
+    }
+
+    @Override
+    public Utf8Writer append(CharSequence csq, int start, int end) throws IOException {
+        if (csq == null) {
+            csq = "null";
+        }
+        return append(csq.subSequence(start, end));
+    }
+
+    @Override
+    public Utf8Writer append(char c) throws IOException {
+        write(c);
+        return this;
+    }
+
+    /**
+     * Writes bytes that are already UTF-8 encoded, such as a cached fragment of
+     * JSON text.
+     *
+     * @param bytes  the encoded bytes
+     * @param offset the offset of the first byte to write
+     * @param length the number of bytes to write
+     * @throws IOException If the bytes can't be passed on
+     */
+    public void writeEncoded(byte[] bytes, int offset, int length) throws IOException {
+        if (pendingHighSurrogate != 0) {
+            if (count + 4 > buf.length) {
+                makeRoom(4);
+            }
+            encodeUnpaired();
+        }
+        if (count + length > buf.length) {
+            makeRoom(length);
+            if (count + length > buf.length) {
+                // larger than the buffer: pass the bytes on directly
+                drain(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    /**
+     * The exact room needed to encode a character, so an exactly sized array
+     * never grows.
+     */
+    private int room(char c) {
+        int room = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 0 : 3;
+        if (pendingHighSurrogate != 0) {
+            // the pair, or the '?' of the unpaired surrogate followed by c
+            return Character.isLowSurrogate(c) ? 4 : room + 1;
+        }
+        return room;
+    }
+
+    /**
+     * Encodes one character that is not part of an ASCII run. The caller has
+     * made room for {@link #room(char)} bytes.
+     */
+    private void encode(char c) {
+        if (pendingHighSurrogate != 0) {
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(pendingHighSurrogate, c);
+                pendingHighSurrogate = 0;
+                buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            // one byte for the unpaired surrogate leaves room for up to 3 bytes of c
+            encodeUnpaired();
+        }
+        if (c < 0x80) {
+            buf[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buf[count++] = (byte) (0xC0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buf[count++] = '?';
+        } else {
+            buf[count++] = (byte) (0xE0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void encodeUnpaired() {
+        pendingHighSurrogate = 0;
+        buf[count++] = '?';
+    }
+
+    /**
+     * Makes room for at least <code>n</code> more bytes, by growing the array or
+     * by passing the buffered bytes on. In the stream and buffer modes the room
+     * is limited by the buffer size.
+     */
+    private void makeRoom(int n) throws IOException {
+        if (out == null && target == null) {
+            int capacity = Math.max(buf.length << 1, count + n);
+            if (capacity < 0) {
+                throw new OutOfMemoryError("Required array size too large");
+            }
+            buf = Arrays.copyOf(buf, capacity);
+        } else {
+            drain(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Passes bytes on to the OutputStream or ByteBuffer.
+     */
+    private void drain(byte[] bytes, int offset, int length) throws IOException {
+        if (out != null) {
+            out.write(bytes, offset, length);
+        } else {
+            try {
+                target.put(bytes, offset, length);
+            } catch (BufferOverflowException e) {
+                throw new IOException("The ByteBuffer has no room left for the JSON text.", e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes collected in the growable array, or buffered but
+     * not passed on yet to the stream or ByteBuffer.
+     *
+     * @return the number of bytes
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get a copy of the bytes collected by a writer created without an
+     * OutputStream or ByteBuffer.
+     *
+     * @return the UTF-8 encoded bytes written
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Get a ByteBuffer wrapping the bytes collected by a writer created without
+     * an OutputStream or ByteBuffer, without copying them. The writer must not be
+     * used afterwards.
+     *
+     * @return a buffer holding the UTF-8 encoded bytes written
+     */
+    ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    /**
+     * Writes the bytes collected by a writer created without an OutputStream or
+     * ByteBuffer to a stream.
+     *
+     * @param stream the stream receiving the bytes
+     * @throws IOException If the stream can't be written
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        stream.write(buf, 0, count);
+    }
+
+    /**
+     * Passes the buffered bytes on to the OutputStream or ByteBuffer, and flushes
+     * the OutputStream. A trailing high surrogate stays pending, waiting for its
+     * low surrogate.
+     *
+     * @throws IOException If the bytes can't be passed on
+     */
+    @Override
+    public void flush() throws IOException {
+        if (out != null || target != null) {
+            drain(buf, 0, count);
+            count = 0;
+            if (out != null) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Encodes a pending unpaired surrogate, flushes, and closes the OutputStream,
+     * if any.
+     *
+     * @throws IOException If the bytes can't be passed on
+     */
+    @Override
+    public void close() throws IOException {
+        if (pendingHighSurrogate != 0) {
+            if (count + 4 > buf.length) {
+                makeRoom(4);
+            }
+            encodeUnpaired();
+        }
+        flush();
+        if (out != null) {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,930 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds JSON values to values of a Java type, for
+ * {@link JSONObject#toBean(Class)} and {@link JSONTokener#nextValue(Class)}.
+ * A value can be bound from a value held by a JSONObject or JSONArray, or read
+ * straight from a JSONTokener, in which case the JSONObjects and JSONArrays of
+ * beans, Collections, Maps and arrays are never built.
+ * <p>
+ * The binders are made once per class and kept in a {@link ClassValue}. A bean
+ * binder finds its properties the first time it is used, so bean classes
+ * referring to themselves are supported. Classes with a {@link JSONCodec} are
+ * bound by their codec.
+ */
+abstract class ValueBinder {
+    private static final ClassValue<ValueBinder> BINDERS = new ClassValue<>() {
+        @Override
+        protected ValueBinder computeValue(Class<?> type) {
+            return create(type);
+        }
+    };
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * Get the binder of a class.
+     *
+     * @param type the class to bind to
+     * @return the binder
+     */
+    static ValueBinder of(Class<?> type) {
+        return BINDERS.get(type);
+    }
+
+    /**
+     * Get a binder of a generic type, such as <code>List&lt;Item&gt;</code>.
+     * Type variables are bound as their bounds.
+     *
+     * @param type the type to bind to
+     * @return the binder
+     */
+    static ValueBinder of(Type type) {
+        if (type instanceof Class<?> klass) {
+            return of(klass);
+        }
+        if (type instanceof ParameterizedType parameterized) {
+            Class<?> raw = (Class<?>) parameterized.getRawType();
+            Type[] arguments = parameterized.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(raw) && arguments.length == 1) {
+                return new CollectionBinder(raw, of(arguments[0]));
+            }
+            if (Map.class.isAssignableFrom(raw) && arguments.length == 2) {
+                return new MapBinder(raw, of(arguments[0]), of(arguments[1]));
+            }
+            return of(raw);
+        }
+        if (type instanceof GenericArrayType array) {
+            ValueBinder component = of(array.getGenericComponentType());
+            return new ArrayBinder(component.type, component);
+        }
+        if (type instanceof WildcardType wildcard) {
+            return of(wildcard.getUpperBounds()[0]);
+        }
+        if (type instanceof TypeVariable<?> variable) {
+            return of(variable.getBounds()[0]);
+        }
+        return of(Object.class);
+    }
+
+    private static ValueBinder create(Class<?> type) {
+        JSONCodec<Object> codec = CodecRegistry.forClass(type);
+        if (codec != null) {
+            return new CodecBinder(type, codec);
+        }
+        ScalarBinder.Kind kind = ScalarBinder.kindOf(type);
+        if (kind != null) {
+            return new ScalarBinder(type, kind);
+        }
+        if (type.isArray()) {
+            return new ArrayBinder(type.getComponentType(), of(type.getComponentType()));
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return new CollectionBinder(type, of(Object.class));
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return new MapBinder(type, of(String.class), of(Object.class));
+        }
+        return new BeanBinder(type);
+    }
+
+    /**
+     * The class of the bound values.
+     */
+    final Class<?> type;
+
+    ValueBinder(Class<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * Binds a value held by a JSONObject or a JSONArray.
+     *
+     * @param value a value, possibly {@link JSONObject#NULL}, but not null
+     * @return the bound value, null for {@link JSONObject#NULL}, also when the
+     * type is primitive
+     * @throws JSONException If the value can't be bound to the type.
+     */
+    abstract Object bind(Object value) throws JSONException;
+
+    /**
+     * Reads the next value of a tokener and binds it.
+     *
+     * @param x the tokener
+     * @return the bound value, null for <code>null</code>
+     * @throws JSONException If the text is invalid or if the value can't be
+     *                       bound to the type.
+     */
+    Object read(JSONTokener x) throws JSONException {
+        return bind(x.nextValue());
+    }
+
+    /**
+     * Checks if the next value of a tokener starts with a character, without
+     * consuming it.
+     */
+    static boolean startsWith(JSONTokener x, char c) throws JSONException {
+        boolean found = x.nextClean() == c;
+        x.back();
+        return found;
+    }
+
+    final JSONException mismatch(Object value) {
+        return mismatch(this.type, value);
+    }
+
+    static JSONException mismatch(Class<?> type, Object value) {
+        // don't try to toString collections or known object types that could be large.
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+            return new JSONException("Value is not a " + type.getTypeName() + " (" + value.getClass() + ").");
+        }
+        return new JSONException("Value is not a " + type.getTypeName()
+                + " (" + value.getClass() + " : " + value + ").");
+    }
+
+    /**
+     * Receives the members of a JSONObject read by
+     * {@link #readObject(JSONTokener, MemberReader)}.
+     */
+    interface MemberReader {
+        /**
+         * Reads the value of a member from the tokener.
+         */
+        void read(JSONTokener x, String key) throws JSONException;
+    }
+
+    /**
+     * Receives the elements of a JSONArray read by
+     * {@link #readArray(JSONTokener, ElementReader)}.
+     */
+    interface ElementReader {
+        /**
+         * Reads an element from the tokener, or receives NULL for an element
+         * left empty, as in <code>[,1]</code>.
+         */
+        void read(JSONTokener x, boolean empty) throws JSONException;
+    }
+
+    /**
+     * Reads a JSONObject text, with the syntax accepted by
+     * {@link JSONObject#JSONObject(JSONTokener)}.
+     */
+    static void readObject(JSONTokener x, MemberReader reader) throws JSONException {
+        if (x.nextClean() != '{') {
+            throw x.syntaxError("A JSONObject text must begin with '{'");
+        }
+        for (; ; ) {
+            char c = x.nextClean();
+            String key = switch (c) {
+                case 0 -> throw x.syntaxError("A JSONObject text must end with '}'");
+                case '}' -> null;
+                default -> x.nextSimpleValue(c).toString();
+            };
+            if (key == null) {
+                return;
+            }
+            if (x.nextClean() != ':') {
+                throw x.syntaxError("Expected a ':' after a key");
+            }
+            reader.read(x, key);
+            switch (x.nextClean()) {
+                case ';':
+                case ',':
+                    if (x.nextClean() == '}') {
+                        return;
+                    }
+                    if (x.end()) {
+                        throw x.syntaxError("A JSONObject text must end with '}'");
+                    }
+                    x.back();
+                    break;
+                case '}':
+                    return;
+                default:
+                    throw x.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Reads a JSONArray text, with the syntax accepted by
+     * {@link JSONArray#JSONArray(JSONTokener)}.
+     */
+    static void readArray(JSONTokener x, ElementReader reader) throws JSONException {
+        if (x.nextClean() != '[') {
+            throw x.syntaxError("A JSONArray text must start with '['");
+        }
+        char nextChar = x.nextClean();
+        if (nextChar == 0) {
+            // array is unclosed. No ']' found, instead EOF
+            throw x.syntaxError("Expected a ',' or ']'");
+        }
+        if (nextChar == ']') {
+            return;
+        }
+        x.back();
+        for (; ; ) {
+            boolean empty = x.nextClean() == ',';
+            x.back();
+            reader.read(x, empty);
+            switch (x.nextClean()) {
+                case 0:
+                    // array is unclosed. No ']' found, instead EOF
+                    throw x.syntaxError("Expected a ',' or ']'");
+                case ',':
+                    nextChar = x.nextClean();
+                    if (nextChar == 0) {
+                        // array is unclosed. No ']' found, instead EOF
+                        throw x.syntaxError("Expected a ',' or ']'");
+                    }
+                    if (nextChar == ']' || nextChar == ',') {
+                        return;
+                    }
+                    x.back();
+                    break;
+                case ']':
+                    return;
+                default:
+                    throw x.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Finds the public constructor without parameters of a class.
+     *
+     * @return the constructor, or null if there is none.
+     */
+    static MethodHandle defaultConstructor(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    static Object construct(MethodHandle constructor, Class<?> type) throws JSONException {
+        if (constructor == null) {
+            throw new JSONException("Unable to create a " + type.getName() + ": no public constructor to bind.");
+        }
+        try {
+            return constructor.invoke();
+        } catch (Throwable e) {
+            throw new JSONException("Unable to create a " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Binds strings, numbers, booleans, characters, enums, and the JSON values
+     * themselves.
+     */
+    static final class ScalarBinder extends ValueBinder {
+        enum Kind {
+            STRING, BOOLEAN, INT, LONG, DOUBLE, FLOAT, SHORT, BYTE, CHAR,
+            BIG_INTEGER, BIG_DECIMAL, NUMBER, ENUM, JSON_OBJECT, JSON_ARRAY, OBJECT
+        }
+
+        private static final Map<Class<?>, Kind> KINDS = new HashMap<>();
+
+        static {
+            KINDS.put(String.class, Kind.STRING);
+            KINDS.put(CharSequence.class, Kind.STRING);
+            KINDS.put(boolean.class, Kind.BOOLEAN);
+            KINDS.put(Boolean.class, Kind.BOOLEAN);
+            KINDS.put(int.class, Kind.INT);
+            KINDS.put(Integer.class, Kind.INT);
+            KINDS.put(long.class, Kind.LONG);
+            KINDS.put(Long.class, Kind.LONG);
+            KINDS.put(double.class, Kind.DOUBLE);
+            KINDS.put(Double.class, Kind.DOUBLE);
+            KINDS.put(float.class, Kind.FLOAT);
+            KINDS.put(Float.class, Kind.FLOAT);
+            KINDS.put(short.class, Kind.SHORT);
+            KINDS.put(Short.class, Kind.SHORT);
+            KINDS.put(byte.class, Kind.BYTE);
+            KINDS.put(Byte.class, Kind.BYTE);
+            KINDS.put(char.class, Kind.CHAR);
+            KINDS.put(Character.class, Kind.CHAR);
+            KINDS.put(BigInteger.class, Kind.BIG_INTEGER);
+            KINDS.put(BigDecimal.class, Kind.BIG_DECIMAL);
+            KINDS.put(Number.class, Kind.NUMBER);
+            KINDS.put(JSONObject.class, Kind.JSON_OBJECT);
+            KINDS.put(JSONArray.class, Kind.JSON_ARRAY);
+            KINDS.put(Object.class, Kind.OBJECT);
+        }
+
+        static Kind kindOf(Class<?> type) {
+            return type.isEnum() ? Kind.ENUM : KINDS.get(type);
+        }
+
+        private final Kind kind;
+
+        ScalarBinder(Class<?> type, Kind kind) {
+            super(type);
+            this.kind = kind;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object bind(Object value) throws JSONException {
+            if (JSONObject.NULL.equals(value)) {
+                return null;
+            }
+            try {
+                switch (this.kind) {
+                    case STRING:
+                        if (value instanceof String || value instanceof Number
+                                || value instanceof Boolean || value instanceof Character) {
+                            return value.toString();
+                        }
+                        break;
+                    case BOOLEAN:
+                        if (value instanceof Boolean) {
+                            return value;
+                        }
+                        if ("true".equalsIgnoreCase(String.valueOf(value))) {
+                            return Boolean.TRUE;
+                        }
+                        if ("false".equalsIgnoreCase(String.valueOf(value))) {
+                            return Boolean.FALSE;
+                        }
+                        break;
+                    case INT:
+                        return number(value).intValue();
+                    case LONG:
+                        return number(value).longValue();
+                    case DOUBLE:
+                        return number(value).doubleValue();
+                    case FLOAT:
+                        return number(value).floatValue();
+                    case SHORT:
+                        return number(value).shortValue();
+                    case BYTE:
+                        return number(value).byteValue();
+                    case NUMBER:
+                        return number(value);
+                    case CHAR:
+                        if (value instanceof Character) {
+                            return value;
+                        }
+                        if (value instanceof String && ((String) value).length() == 1) {
+                            return ((String) value).charAt(0);
+                        }
+                        break;
+                    case BIG_INTEGER:
+                        BigInteger bigInteger = JSONObject.objectToBigInteger(value, null);
+                        if (bigInteger != null) {
+                            return bigInteger;
+                        }
+                        break;
+                    case BIG_DECIMAL:
+                        BigDecimal bigDecimal = JSONObject.objectToBigDecimal(value, null);
+                        if (bigDecimal != null) {
+                            return bigDecimal;
+                        }
+                        break;
+                    case ENUM:
+                        if (this.type.isInstance(value)) {
+                            return value;
+                        }
+                        if (value instanceof String) {
+                            return Enum.valueOf((Class<? extends Enum>) this.type, (String) value);
+                        }
+                        break;
+                    case JSON_OBJECT:
+                        if (value instanceof JSONObject) {
+                            return value;
+                        }
+                        break;
+                    case JSON_ARRAY:
+                        if (value instanceof JSONArray) {
+                            return value;
+                        }
+                        break;
+                    default:
+                        return value;
+                }
+            } catch (IllegalArgumentException e) {
+                // also for a NumberFormatException
+                throw new JSONException(mismatch(value).getMessage(), e);
+            }
+            throw mismatch(value);
+        }
+
+        private Number number(Object value) throws JSONException {
+            if (value instanceof Number) {
+                return (Number) value;
+            }
+            if (value instanceof String) {
+                return JSONObject.stringToNumber((String) value);
+            }
+            throw mismatch(value);
+        }
+    }
+
+    /**
+     * Binds JSONArrays to Collections.
+     */
+    static final class CollectionBinder extends ValueBinder {
+        private final ValueBinder element;
+        private final MethodHandle constructor;
+
+        CollectionBinder(Class<?> type, ValueBinder element) {
+            super(type);
+            this.element = element;
+            this.constructor = type.isAssignableFrom(ArrayList.class) ? null : defaultConstructor(type);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<Object> newCollection() throws JSONException {
+            if (this.type.isAssignableFrom(ArrayList.class)) {
+                return new ArrayList<>();
+            }
+            if (this.constructor == null) {
+                if (this.type.isAssignableFrom(LinkedHashSet.class)) {
+                    return new LinkedHashSet<>();
+                }
+                if (this.type.isAssignableFrom(TreeSet.class)) {
+                    return new TreeSet<>();
+                }
+                if (this.type.isAssignableFrom(ArrayDeque.class)) {
+                    return new ArrayDeque<>();
+                }
+            }
+            return (Collection<Object>) construct(this.constructor, this.type);
+        }
+
+        @Override
+        Object bind(Object value) throws JSONException {
+            if (JSONObject.NULL.equals(value)) {
+                return null;
+            }
+            if (!(value instanceof JSONArray)) {
+                throw mismatch(value);
+            }
+            JSONArray array = (JSONArray) value;
+            Collection<Object> collection = newCollection();
+            for (int i = 0, length = array.length(); i < length; i += 1) {
+                try {
+                    collection.add(this.element.bind(array.opt(i)));
+                } catch (RuntimeException e) {
+                    throw new JSONException("Unable to bind JSONArray value at index: " + i, e);
+                }
+            }
+            return collection;
+        }
+
+        @Override
+        Object read(JSONTokener x) throws JSONException {
+            if (!startsWith(x, '[')) {
+                return bind(x.nextValue());
+            }
+            Collection<Object> collection = newCollection();
+            readArray(x, (tokener, empty) -> {
+                try {
+                    collection.add(empty ? this.element.bind(JSONObject.NULL) : this.element.read(tokener));
+                } catch (RuntimeException e) {
+                    throw new JSONException("Unable to bind JSONArray value at index: " + collection.size(), e);
+                }
+            });
+            return collection;
+        }
+    }
+
+    /**
+     * Binds JSONArrays to arrays.
+     */
+    static final class ArrayBinder extends ValueBinder {
+        private final Class<?> componentType;
+        private final ValueBinder component;
+
+        ArrayBinder(Class<?> componentType, ValueBinder component) {
+            super(Array.newInstance(componentType, 0).getClass());
+            this.componentType = componentType;
+            this.component = component;
+        }
+
+        private Object toArray(List<Object> elements) throws JSONException {
+            Object array = Array.newInstance(this.componentType, elements.size());
+            for (int i = 0; i < elements.size(); i += 1) {
+                Object element = elements.get(i);
+                if (element == null && this.componentType.isPrimitive()) {
+                    throw new JSONException("Unable to bind JSONArray value at index: " + i,
+                            mismatch(this.componentType, JSONObject.NULL));
+                }
+                Array.set(array, i, element);
+            }
+            return array;
+        }
+
+        @Override
+        Object bind(Object value) throws JSONException {
+            if (JSONObject.NULL.equals(value)) {
+                return null;
+            }
+            if (!(value instanceof JSONArray)) {
+                throw mismatch(value);
+            }
+            JSONArray array = (JSONArray) value;
+            List<Object> elements = new ArrayList<>(array.length());
+            for (int i = 0, length = array.length(); i < length; i += 1) {
+                try {
+                    elements.add(this.component.bind(array.opt(i)));
+                } catch (RuntimeException e) {
+                    throw new JSONException("Unable to bind JSONArray value at index: " + i, e);
+                }
+            }
+            return toArray(elements);
+        }
+
+        @Override
+        Object read(JSONTokener x) throws JSONException {
+            if (!startsWith(x, '[')) {
+                return bind(x.nextValue());
+            }
+            List<Object> elements = new ArrayList<>();
+            readArray(x, (tokener, empty) -> {
+                try {
+                    elements.add(empty ? this.component.bind(JSONObject.NULL) : this.component.read(tokener));
+                } catch (RuntimeException e) {
+                    throw new JSONException("Unable to bind JSONArray value at index: " + elements.size(), e);
+                }
+            });
+            return toArray(elements);
+        }
+    }
+
+    /**
+     * Binds JSONObjects to Maps, binding their keys like string values.
+     */
+    static final class MapBinder extends ValueBinder {
+        private final ValueBinder key;
+        private final ValueBinder value;
+        private final MethodHandle constructor;
+
+        MapBinder(Class<?> type, ValueBinder key, ValueBinder value) {
+            super(type);
+            this.key = key;
+            this.value = value;
+            this.constructor = type.isAssignableFrom(LinkedHashMap.class) ? null : defaultConstructor(type);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<Object, Object> newMap() throws JSONException {
+            if (this.type.isAssignableFrom(LinkedHashMap.class)) {
+                return new LinkedHashMap<>();
+            }
+            if (this.constructor == null) {
+                if (this.type.isAssignableFrom(TreeMap.class)) {
+                    return new TreeMap<>();
+                }
+                if (this.type.isAssignableFrom(ConcurrentHashMap.class)) {
+                    return new ConcurrentHashMap<>();
+                }
+            }
+            return (Map<Object, Object>) construct(this.constructor, this.type);
+        }
+
+        private void put(Map<Object, Object> map, String key, Object value) throws JSONException {
+            try {
+                map.put(this.key.bind(key), value);
+            } catch (RuntimeException e) {
+                throw new JSONException("Unable to bind JSONObject value for key: " + key, e);
+            }
+        }
+
+        @Override
+        Object bind(Object value) throws JSONException {
+            if (JSONObject.NULL.equals(value)) {
+                return null;
+            }
+            if (!(value instanceof JSONObject)) {
+                throw mismatch(value);
+            }
+            Map<Object, Object> map = newMap();
+            for (Map.Entry<String, Object> entry : ((JSONObject) value).entries()) {
+                Object bound;
+                try {
+                    bound = this.value.bind(entry.getValue());
+                } catch (RuntimeException e) {
+                    throw new JSONException("Unable to bind JSONObject value for key: " + entry.getKey(), e);
+                }
+                put(map, entry.getKey(), bound);
+            }
+            return map;
+        }
+
+        @Override
+        Object read(JSONTokener x) throws JSONException {
+            if (!startsWith(x, '{')) {
+                return bind(x.nextValue());
+            }
+            Map<Object, Object> map = newMap();
+            readObject(x, (tokener, key) -> {
+                Object bound;
+                try {
+                    bound = this.value.read(tokener);
+                } catch (RuntimeException e) {
+                    throw new JSONException("Unable to bind JSONObject value for key: " + key, e);
+                }
+                put(map, key, bound);
+            });
+            return map;
+        }
+    }
+
+    /**
+     * Binds JSONObjects with the {@link JSONCodec} of a class.
+     */
+    static final class CodecBinder extends ValueBinder {
+        private final JSONCodec<Object> codec;
+
+        CodecBinder(Class<?> type, JSONCodec<Object> codec) {
+            super(type);
+            this.codec = codec;
+        }
+
+        @Override
+        Object bind(Object value) throws JSONException {
+            if (JSONObject.NULL.equals(value)) {
+                return null;
+            }
+            if (!(value instanceof JSONObject)) {
+                throw mismatch(value);
+            }
+            return this.codec.fromJSONObject((JSONObject) value);
+        }
+
+        @Override
+        Object read(JSONTokener x) throws JSONException {
+            if (!startsWith(x, '{')) {
+                return bind(x.nextValue());
+            }
+            return this.codec.read(x);
+        }
+    }
+
+    /**
+     * Binds JSONObjects to records, and to beans made with their public
+     * constructor and setters.
+     */
+    static final class BeanBinder extends ValueBinder {
+        /**
+         * The properties, found the first time the binder is used.
+         */
+        private volatile Properties properties;
+
+        BeanBinder(Class<?> type) {
+            super(type);
+        }
+
+        private Properties properties() throws JSONException {
+            Properties found = this.properties;
+            if (found == null) {
+                found = new Properties(this.type);
+                this.properties = found;
+            }
+            return found;
+        }
+
+        @Override
+        Object bind(Object value) throws JSONException {
+            if (JSONObject.NULL.equals(value)) {
+                return null;
+            }
+            if (!(value instanceof JSONObject)) {
+                throw mismatch(value);
+            }
+            JSONObject jo = (JSONObject) value;
+            Properties found = properties();
+            Object[] values = new Object[found.keys.length];
+            for (int i = 0; i < values.length; i += 1) {
+                Object member = jo.opt(found.keys[i]);
+                if (member != null) {
+                    try {
+                        values[i] = found.binders[i].bind(member);
+                    } catch (RuntimeException e) {
+                        throw new JSONException("Unable to bind JSONObject value for key: " + found.keys[i], e);
+                    }
+                }
+            }
+            return found.newInstance(values);
+        }
+
+        @Override
+        Object read(JSONTokener x) throws JSONException {
+            if (!startsWith(x, '{')) {
+                return bind(x.nextValue());
+            }
+            Properties found = properties();
+            Object[] values = new Object[found.keys.length];
+            readObject(x, (tokener, key) -> {
+                Integer i = found.index.get(key);
+                if (i == null) {
+                    tokener.nextValue();
+                    return;
+                }
+                try {
+                    values[i] = found.binders[i].read(tokener);
+                } catch (RuntimeException e) {
+                    throw new JSONException("Unable to bind JSONObject value for key: " + key, e);
+                }
+            });
+            return found.newInstance(values);
+        }
+    }
+
+    /**
+     * The properties of a bean class: the parameters of the constructor used
+     * to create it, followed by its setters.
+     */
+    private static final class Properties {
+        final Class<?> type;
+        final String[] keys;
+        final ValueBinder[] binders;
+        final Map<String, Integer> index;
+        /**
+         * The constructor taking an array of the constructor parameters.
+         */
+        private final MethodHandle constructor;
+        private final Class<?>[] parameterTypes;
+        private final MethodHandle[] setters;
+
+        Properties(Class<?> type) throws JSONException {
+            this.type = type;
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())
+                    || !Modifier.isPublic(type.getModifiers())) {
+                throw new JSONException("Unable to bind to " + type.getName()
+                        + ": only public classes which are not abstract can be bound.");
+            }
+            List<String> keys = new ArrayList<>();
+            List<ValueBinder> binders = new ArrayList<>();
+            Constructor<?> constructor = creator(type, keys, binders);
+            if (constructor == null) {
+                throw new JSONException("Unable to bind to " + type.getName()
+                        + ": no public constructor without parameters, or with named parameters.");
+            }
+            this.parameterTypes = constructor.getParameterTypes();
+            List<MethodHandle> setters = new ArrayList<>();
+            if (!type.isRecord()) {
+                for (Method method : type.getMethods()) {
+                    String key = BeanDescriptor.getKeyNameFromSetter(type, method);
+                    if (key == null || keys.contains(key)) {
+                        continue;
+                    }
+                    try {
+                        setters.add(MethodHandles.publicLookup().unreflect(method).asType(SETTER_TYPE));
+                    } catch (IllegalAccessException e) {
+                        continue;
+                    }
+                    keys.add(key);
+                    binders.add(of(method.getGenericParameterTypes()[0]));
+                }
+            }
+            try {
+                this.constructor = MethodHandles.publicLookup().unreflectConstructor(constructor)
+                        .asSpreader(Object[].class, this.parameterTypes.length)
+                        .asType(CONSTRUCTOR_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new JSONException("Unable to bind to " + type.getName(), e);
+            }
+            this.setters = setters.toArray(new MethodHandle[0]);
+            this.keys = keys.toArray(new String[0]);
+            this.binders = binders.toArray(new ValueBinder[0]);
+            this.index = new HashMap<>(this.keys.length * 2);
+            for (int i = 0; i < this.keys.length; i += 1) {
+                if (this.keys[i] != null) {
+                    this.index.putIfAbsent(this.keys[i], i);
+                }
+            }
+        }
+
+        /**
+         * Finds the constructor to create the beans with: the canonical
+         * constructor of a record, the constructor without parameters, or else
+         * the constructor with the most parameters whose keys are all known. Adds
+         * the keys and binders of its parameters, a null key for an ignored
+         * record component.
+         */
+        private static Constructor<?> creator(Class<?> type, List<String> keys, List<ValueBinder> binders) {
+            if (type.isRecord()) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] types = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i += 1) {
+                    types[i] = components[i].getType();
+                    keys.add(BeanDescriptor.getKeyNameFromAccessor(components[i].getAccessor(),
+                            components[i].getName()));
+                    binders.add(of(components[i].getGenericType()));
+                }
+                try {
+                    return type.getConstructor(types);
+                } catch (NoSuchMethodException e) {
+                    return null;
+                }
+            }
+            Constructor<?> best = null;
+            String[] bestKeys = null;
+            for (Constructor<?> constructor : type.getConstructors()) {
+                Parameter[] parameters = constructor.getParameters();
+                if (parameters.length == 0) {
+                    best = constructor;
+                    bestKeys = new String[0];
+                    break;
+                }
+                if (best != null && parameters.length <= bestKeys.length) {
+                    continue;
+                }
+                String[] names = new String[parameters.length];
+                for (int i = 0; i < parameters.length && names != null; i += 1) {
+                    names[i] = BeanDescriptor.getKeyNameFromParameter(parameters[i]);
+                    if (names[i] == null) {
+                        names = null;
+                    }
+                }
+                if (names != null) {
+                    best = constructor;
+                    bestKeys = names;
+                }
+            }
+            if (best != null) {
+                Type[] types = best.getGenericParameterTypes();
+                if (types.length != bestKeys.length) {
+                    // inner classes and enums have implicit parameters
+                    return null;
+                }
+                for (int i = 0; i < bestKeys.length; i += 1) {
+                    keys.add(bestKeys[i]);
+                    binders.add(of(types[i]));
+                }
+            }
+            return best;
+        }
+
+        Object newInstance(Object[] values) throws JSONException {
+            int count = this.parameterTypes.length;
+            Object[] arguments = count == values.length ? values : Arrays.copyOf(values, count);
+            for (int i = 0; i < count; i += 1) {
+                if (arguments[i] == null && this.parameterTypes[i].isPrimitive()) {
+                    arguments[i] = defaultValue(this.parameterTypes[i]);
+                }
+            }
+            Object bean;
+            try {
+                bean = (Object) this.constructor.invokeExact(arguments);
+            } catch (Throwable e) {
+                throw new JSONException("Unable to create a " + this.type.getName(), e);
+            }
+            for (int i = count; i < values.length; i += 1) {
+                if (values[i] != null) {
+                    try {
+                        this.setters[i - count].invokeExact(bean, values[i]);
+                    } catch (Throwable e) {
+                        throw new JSONException("Unable to bind JSONObject value for key: " + this.keys[i], e);
+                    }
+                }
+            }
+            return bean;
+        }
+
+        private static Object defaultValue(Class<?> primitive) {
+            return Array.get(Array.newInstance(primitive, 1), 0);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.json;
+
+/*
+Public Domain.
+*/
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The kinds of values {@link JSONObject#wrap(Object)} and the writers tell
+ * apart, so a value is dispatched with a single lookup of the kind of its
+ * class, rather than a chain of <code>instanceof</code> tests and a look at
+ * the name of its package. The kinds are found once per class and kept in a
+ * {@link ClassValue}.
+ * <p>
+ * The kinds are tested in the order the writers test them:
+ * {@link JSONString} first, then the scalars, then the containers, then the
+ * classes with a {@link JSONCodec}, the classes written as their
+ * <code>toString()</code>, and the beans.
+ */
+enum ValueKind {
+    /**
+     * A {@link JSONString}, written by its toJSONString method.
+     */
+    JSON_STRING,
+    /**
+     * A String.
+     */
+    STRING,
+    /**
+     * A Byte, Short, Integer, Long, Float, Double, BigInteger or BigDecimal,
+     * which JSONObject holds as it is.
+     */
+    NUMBER,
+    /**
+     * Another Number, such as an AtomicLong, written as a number but wrapped
+     * like any other object.
+     */
+    OTHER_NUMBER,
+    /**
+     * A Boolean.
+     */
+    BOOLEAN,
+    /**
+     * A Character, held as it is and written as a string.
+     */
+    CHARACTER,
+    /**
+     * An Enum, written as its name.
+     */
+    ENUM,
+    /**
+     * A JSONObject.
+     */
+    JSON_OBJECT,
+    /**
+     * A JSONArray.
+     */
+    JSON_ARRAY,
+    /**
+     * A Collection, wrapped in a JSONArray.
+     */
+    COLLECTION,
+    /**
+     * An array, wrapped in a JSONArray.
+     */
+    ARRAY,
+    /**
+     * A Map, wrapped in a JSONObject.
+     */
+    MAP,
+    /**
+     * An object of a class with a {@link JSONCodec}.
+     */
+    CODEC,
+    /**
+     * An object of a class of the java or javax packages, or loaded by the
+     * bootstrap class loader, wrapped as its toString().
+     */
+    STRINGIFIED,
+    /**
+     * Any other object, wrapped in a JSONObject made from its getters.
+     */
+    BEAN;
+
+    private static final ClassValue<ValueKind> KINDS = new ClassValue<>() {
+        @Override
+        protected ValueKind computeValue(Class<?> type) {
+            return classify(type);
+        }
+    };
+
+    /**
+     * Get the kind of a value.
+     *
+     * @param value the value, not null
+     * @return the kind of the class of the value
+     */
+    static ValueKind of(Object value) {
+        return KINDS.get(value.getClass());
+    }
+
+    /**
+     * Checks if the values of this kind can hold other values, and so can be
+     * met again while they are converted, see {@link CycleTracker}.
+     *
+     * @return true for beans, with or without a codec, Maps, Collections and
+     * arrays.
+     */
+    boolean isComposite() {
+        return this == BEAN || this == CODEC || this == MAP || this == COLLECTION || this == ARRAY;
+    }
+
+    private static ValueKind classify(Class<?> type) {
+        if (JSONString.class.isAssignableFrom(type)) {
+            return JSON_STRING;
+        }
+        if (type == String.class) {
+            return STRING;
+        }
+        if (Number.class.isAssignableFrom(type)) {
+            return type == Integer.class || type == Long.class || type == Double.class
+                    || type == Float.class || type == Short.class || type == Byte.class
+                    || BigInteger.class.isAssignableFrom(type) || BigDecimal.class.isAssignableFrom(type)
+                    ? NUMBER : OTHER_NUMBER;
+        }
+        if (type == Boolean.class) {
+            return BOOLEAN;
+        }
+        if (type == Character.class) {
+            return CHARACTER;
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return ENUM;
+        }
+        if (JSONObject.class.isAssignableFrom(type)) {
+            return JSON_OBJECT;
+        }
+        if (JSONArray.class.isAssignableFrom(type)) {
+            return JSON_ARRAY;
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return COLLECTION;
+        }
+        if (type.isArray()) {
+            return ARRAY;
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return MAP;
+        }
+        return classifyObject(type);
+    }
+
+    /**
+     * Classifies the objects which aren't JSON values, scalars or containers.
+     */
+    private static ValueKind classifyObject(Class<?> type) {
+        if (CodecRegistry.forClass(type) != null) {
+            return CODEC;
+        }
+        Package objectPackage = type.getPackage();
+        String objectPackageName = objectPackage != null ? objectPackage.getName() : "";
+        if (objectPackageName.startsWith("java.")
+                || objectPackageName.startsWith("javax.")
+                || type.getClassLoader() == null) {
+            return STRINGIFIED;
+        }
+        return BEAN;
+    }
+
+    /**
+     * Get the kind of a value as {@link JSONObject#wrap(Object)} sees it: the
+     * values of an {@link #OTHER_NUMBER} class are wrapped like other objects,
+     * so their kind is {@link #CODEC}, {@link #STRINGIFIED} or {@link #BEAN}.
+     *
+     * @param value the value, not null
+     * @return the kind of the value
+     */
+    static ValueKind ofWrapped(Object value) {
+        ValueKind kind = of(value);
+        return kind == OTHER_NUMBER ? classifyObject(value.getClass()) : kind;
+    }
+}